@@ -3,6 +3,10 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.cmu.sphinx.decoder.search.Token;
 import edu.cmu.sphinx.alignment.LongTextAligner;
@@ -19,6 +23,10 @@ import edu.cmu.sphinx.util.TimeFrame;
 import edu.cmu.sphinx.util.BatchFile;
 
 public class Adapter {
+    // Number of frames handed to Stats at once.
+    private static final int CHUNK_SIZE = Integer.getInteger("adapter.chunk", 4096);
+    private static final int NUM_CLUSTERS = 1;
+
     public static void main(String args[]) throws Exception {
         Context.setCustomConfig("/audio/tools/transcription/jar/config.xml");
 
@@ -26,7 +34,7 @@ public class Adapter {
         if (args.length > 0) {
             batchPath = args[0];
         } else {
-            System.err.println("Usage: java Adapter <batch> [transformPath]");
+            System.err.println("Usage: java [-Dbatch.workers=N] Adapter <batch> [transformPath]");
             System.exit(-1);
         }
 
@@ -35,50 +43,165 @@ public class Adapter {
             transformPath = args[1];
         }
 
-        ClusteredDensityFileData clusters =
-            new ClusteredDensityFileData(SpeechTools.getContext().getLoader(), 1);
-        Stats stats =
-            new Stats(SpeechTools.getContext().getLoader(), clusters);
+        StatsMerger stats = collectStats(BatchFile.getLines(batchPath),
+                BatchExecutor.getWorkerCount());
 
-        for (String line : BatchFile.getLines(batchPath)) {
-            String fileName = BatchFile.getFilename(line);
-            System.out.println(fileName);
+        Transform transform = stats.createTransform();
 
-            String featName = fileName.substring(0, fileName.lastIndexOf('.')) + ".feat";
+        if (transform == null) {
+            System.out.println("Not enough data for transform!");
+        } else {
+            transform.store(transformPath, 0);
+            System.out.println("Writing transform to " + transformPath);
+        }
 
-            List<FloatData> features = new ArrayList<FloatData>();
-            List<Integer> mids = new ArrayList<Integer>();
+    }
 
-            //TranscriptAlignment t = SpeechTools.getTranscriptAlignment(line);
-            for (FeatureReader.LabelledFeature f : FeatureReader.loadFeatures(featName)) {
-                //System.out.println(f);
-                features.add(f.data);
-                mids.add(f.mId);
-            }
+    /**
+     * Collects adaptation statistics over a batch.  The batch is split into
+     * one contiguous shard per worker, each worker collects partial stats
+     * over its shard, and the partial stats are merged in shard order.
+     * File names are printed as shards are merged, so they come out in
+     * batch order.
+     *
+     * @param lines batch lines
+     * @param workers number of workers
+     * @return merged stats
+     */
+    private static StatsMerger collectStats(List<String> lines, int workers) throws Exception {
+        workers = Math.max(1, Math.min(workers, lines.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<List<String>> shards = new ArrayList<List<String>>();
+        List<Future<Shard>> partials = new ArrayList<Future<Shard>>();
 
-            /*
-            for (FrameAlignment f : t.frames.values()) {
-                if (f.features != null && f.mId != null) {
-                    features.add(f.features);
-                    mids.add(f.mId);
+        try {
+            for (int i = 0; i < workers; ++i) {
+                final List<String> shard = lines.subList(
+                        i * lines.size() / workers,
+                        (i + 1) * lines.size() / workers);
+                shards.add(shard);
+                partials.add(executor.submit(new Callable<Shard>() {
+                    public Shard call() throws Exception {
+                        return collectShard(shard);
+                    }
+                }));
+            }
 
-                    System.out.printf("%d %d\n", f.time, f.mId);
+            StatsMerger stats = null;
+            for (int i = 0; i < partials.size(); ++i) {
+                Shard shard = partials.get(i).get();
+                for (String line : shards.get(i)) {
+                    System.out.println(BatchFile.getFilename(line));
                 }
+                if (stats == null) stats = new StatsMerger(shard.loader, NUM_CLUSTERS);
+                stats.add(shard.stats, shard.frames);
             }
-            */
-            stats.collect(features, mids);
-            //t = null;
-            //System.gc();
+            return stats;
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        Transform transform = stats.createTransform();
+    /**
+     * Collects stats over the feature files of a shard of the batch.
+     * Each shard loads its own acoustic model, because Stats inverts the
+     * loader's variances in place when it is created.
+     *
+     * @param lines batch lines in this shard
+     * @return partial stats
+     */
+    private static Shard collectShard(List<String> lines) throws Exception {
+        // Only the acoustic model is used; the full key keeps this working
+        // with -Dmodel.snapshot set but no snapshot written.
+        ModelRegistry.ModelKey key = SpeechTools.getFullModelKey();
+        Configuration config = new Configuration();
+        config.setAcousticModelPath(key.acousticModelPath);
+        config.setDictionaryPath(key.dictionaryPath);
+        Loader loader = new Context(config).getLoader();
 
-        if (transform == null) {
-            System.out.println("Not enough data for transform!");
-        } else {
-            transform.store(transformPath, 0);
-            System.out.println("Writing transform to " + transformPath);
+        ClusteredDensityFileData clusters =
+            new ClusteredDensityFileData(loader, NUM_CLUSTERS);
+        Shard shard = new Shard(loader, new Stats(loader, clusters));
+
+        Chunk chunk = new Chunk(CHUNK_SIZE);
+        for (String line : lines) {
+            String fileName = BatchFile.getFilename(line);
+            String featName = fileName.substring(0, fileName.lastIndexOf('.')) + ".feat";
+            FeatureReader.Cursor cursor = FeatureReader.openCursor(featName);
+
+            while (cursor.next()) {
+                chunk.add(cursor);
+                ++shard.frames;
+                if (chunk.isFull()) chunk.collect(shard.stats);
+            }
+        }
+        chunk.collect(shard.stats);
+        return shard;
+    }
+
+    /**
+     * Partial stats of a shard, with the loader they were created with and
+     * the number of frames collected into them.
+     */
+    private static class Shard {
+        final Loader loader;
+        final Stats stats;
+        long frames;
+
+        Shard(Loader loader, Stats stats) {
+            this.loader = loader;
+            this.stats = stats;
+            this.frames = 0;
+        }
+    }
+
+    /**
+     * Fixed-size buffer of labelled frames.  Value arrays are allocated once
+     * and reused for every chunk, so memory use depends on the chunk size
+     * and not on the length of the feature files.
+     */
+    private static class Chunk {
+        private final float[][] values;
+        private final int[] mIds;
+        private final int[] sampleRates;
+        private int size;
+
+        Chunk(int capacity) {
+            this.values = new float[capacity][];
+            this.mIds = new int[capacity];
+            this.sampleRates = new int[capacity];
+            this.size = 0;
+        }
+
+        boolean isFull() {
+            return size == values.length;
         }
 
+        void add(FeatureReader.Cursor cursor) {
+            float[] src = cursor.getValues();
+            if (values[size] == null || values[size].length != src.length) {
+                values[size] = new float[src.length];
+            }
+            System.arraycopy(src, 0, values[size], 0, src.length);
+            mIds[size] = cursor.getMixtureId();
+            sampleRates[size] = cursor.getSampleRate();
+            ++size;
+        }
+
+        /**
+         * Hands the buffered frames to the stats and empties the chunk.
+         */
+        void collect(Stats stats) throws Exception {
+            if (size == 0) return;
+
+            List<FloatData> features = new ArrayList<FloatData>(size);
+            List<Integer> mids = new ArrayList<Integer>(size);
+            for (int i = 0; i < size; ++i) {
+                features.add(new FloatData(values[i], sampleRates[i], 0));
+                mids.add(mIds[i]);
+            }
+            stats.collect(features, mids);
+            size = 0;
+        }
     }
 }
@@ -55,7 +55,7 @@ public class Aligner {
         Senone s = loader.getSenonePool().get(senoneId);
 
         FrontEnd frontend = context.getInstance(FrontEnd.class);
-        context.setSpeechSource(audioUrl.openStream());
+        context.setSpeechSource(new AudioBuffer(audioUrl).openStream());
         Data data = null;
         while ((data = frontend.getData()) != null) {
             //System.out.println(data.getClass().getName());
@@ -82,40 +82,25 @@ public class Aligner {
         float total = LogMath.getLogMath().linearToLog(0.0f);
         int count = 0;
 
+        TokenDecoder decoder = new TokenDecoder();
         for (WordResult wr : results) {
             stringResults.add(wr.getWord().getSpelling());
             System.out.println(wr);
 
             for (Token token : wr.getTokens()) {
                 if (Double.compare(token.getAcousticScore(), 0.0) != 0) {
-                    long collectTime = token.getCollectTime();
-                    float logAcousticScore = token.getAcousticScore();
+                    decoder.decode(token);
+                    long collectTime = decoder.getTime();
+                    float logAcousticScore = decoder.getScore();
                     double linearAcousticScore = LogMath.getLogMath().logToLinear(logAcousticScore);
-                    char state = ' ';
 
                     // Add acoustic score to total.
-                    total = LogMath.getLogMath().addAsLinear(total, token.getAcousticScore());
+                    total = LogMath.getLogMath().addAsLinear(total, logAcousticScore);
                     count += 1;
 
-                    // Extract HMM string.
-                    String searchState = token.getSearchState().toString();
-
-                    if (searchState.charAt(0) == '*') {
-                        state = searchState.charAt(2);
-                    } else {
-                        state = searchState.charAt(searchState.length() - 1);
-                    }
-
-                    searchState = searchState.substring(searchState.indexOf("[") - 2);
-                    searchState = searchState.substring(searchState.indexOf("[") - 2);
-                    if (!Character.isLetter(searchState.charAt(0))) {
-                        searchState = searchState.substring(1);
-                    }
-                    searchState = searchState.substring(0, searchState.indexOf("]") + 1);
-
                     // Print data.
                     System.out.printf("%10d ", collectTime);
-                    System.out.printf("%10s S%c ", searchState, state);
+                    System.out.printf("%10s S%d ", decoder.getUnitName(), decoder.getState());
                     System.out.println(linearAcousticScore);
 
                     /*
@@ -130,7 +115,7 @@ public class Aligner {
 
 
                     // Get Gaussian Mixture.
-                    int mId = (int) ((HMMSearchState) token.getSearchState()).getHMMState().getMixtureId();
+                    int mId = decoder.getMixtureId();
                     GaussianMixture gm = ((GaussianMixture) loader.getSenonePool().get(mId));
                     System.out.println("mId: " + mId);
                     //System.out.println(LogMath.getLogMath().logToLinear(gm.getScore(token.getData())));
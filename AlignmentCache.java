@@ -0,0 +1,233 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.cmu.sphinx.util.TimeFrame;
+
+/**
+ * On-disk cache of transcript alignments.
+ * Entries are keyed by a SHA-256 hash of the audio, the transcript, the
+ * contents of the model files and the chunked alignment setting, so an
+ * alignment is reused only when everything that went into it is the same.
+ * Once the cache grows past its size limit, the entries used least
+ * recently are deleted.
+ *
+ * The cache is off unless a directory is set with the alignment.cache
+ * system property.
+ */
+public class AlignmentCache {
+    /** System property holding the cache directory. */
+    public static final String PROP_DIR = "alignment.cache";
+    /** System property holding the cache size limit in megabytes. */
+    public static final String PROP_SIZE = "alignment.cache.size";
+
+    private static final int MAGIC = 0x414c4743;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".algc";
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long stores = 0;
+    private static long evictions = 0;
+
+    public static boolean isEnabled() {
+        return getDirectory() != null;
+    }
+
+    public static File getDirectory() {
+        String path = System.getProperty(PROP_DIR);
+        return (path == null) ? null : new File(path);
+    }
+
+    /**
+     * Gets the size limit requested through the alignment.cache.size
+     * system property.  Defaults to 4096 megabytes.
+     * @return limit in bytes
+     */
+    public static long getSizeLimit() {
+        return Long.getLong(PROP_SIZE, 4096) << 20;
+    }
+
+    /**
+     * Computes the cache key of an alignment.
+     * @param audio buffered audio
+     * @param transcript transcript
+     * @param key models used for alignment
+     * @param chunkLength chunk length used for alignment, 0 for none
+     * @return hex encoded key
+     */
+    public static String getKey(AudioBuffer audio, String transcript,
+            ModelRegistry.ModelKey key, long chunkLength) throws Exception {
+        return new ContentDigest()
+            .update("alignment " + VERSION)
+            .update(audio)
+            .update(transcript)
+            .updatePath(key.acousticModelPath)
+            .updatePath(key.dictionaryPath)
+            .updatePath(key.g2pPath)
+            .updatePath(key.transformPath)
+            .update(Long.toString(chunkLength))
+            .toHex();
+    }
+
+    /**
+     * Loads a cached alignment.
+     * @param key cache key
+     * @return alignment, or null if it is not cached
+     */
+    public static TranscriptAlignment load(String key) {
+        File file = new File(getDirectory(), key + SUFFIX);
+        TranscriptAlignment t = null;
+        if (file.isFile()) {
+            try {
+                t = read(file);
+                // Mark as recently used.
+                file.setLastModified(System.currentTimeMillis());
+            } catch (IOException e) {
+                System.err.println("WARNING: dropping unreadable cache entry " + file);
+                file.delete();
+            }
+        }
+
+        synchronized (AlignmentCache.class) {
+            if (t == null) ++misses;
+            else ++hits;
+        }
+        return t;
+    }
+
+    /**
+     * Stores an alignment and evicts old entries if the cache is over its
+     * size limit.  Entries are written to a temporary file and renamed, so
+     * concurrent readers never see a partial entry.
+     * @param key cache key
+     * @param t alignment
+     */
+    public static void store(String key, TranscriptAlignment t) throws IOException {
+        File dir = getDirectory();
+        dir.mkdirs();
+        File tmp = File.createTempFile(key + "-", ".tmp", dir);
+        try {
+            write(tmp, t);
+            Files.move(tmp.toPath(), new File(dir, key + SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+
+        synchronized (AlignmentCache.class) {
+            ++stores;
+            evict(dir, getSizeLimit());
+        }
+    }
+
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Prints hit statistics to stderr, if the cache is enabled.
+     */
+    public static synchronized void print() {
+        if (!isEnabled()) return;
+        long lookups = hits + misses;
+        System.err.println("Cache hits: " + hits);
+        System.err.println("Cache misses: " + misses);
+        System.err.printf("Cache hit rate: %.1f%%\n",
+                (lookups == 0) ? 0.0 : 100.0 * hits / lookups);
+        System.err.println("Cache stores: " + stores);
+        System.err.println("Cache evictions: " + evictions);
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits.
+     */
+    private static void evict(File dir, long limit) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+
+        List<File> entries = new ArrayList<File>();
+        long size = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                entries.add(file);
+                size += file.length();
+            }
+        }
+        if (size <= limit) return;
+
+        Collections.sort(entries, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : entries) {
+            if (size <= limit) break;
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+                ++evictions;
+            }
+        }
+    }
+
+    private static void write(File file, TranscriptAlignment t) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(t.badTranscript);
+
+            out.writeInt(t.words.size());
+            for (WordAlignment w : t.words) {
+                out.writeUTF(w.word);
+                out.writeLong((w.time == null) ? NO_TIME : w.time.getStart());
+                out.writeLong((w.time == null) ? NO_TIME : w.time.getEnd());
+            }
+            t.frames.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static TranscriptAlignment read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a cache entry: " + file);
+            boolean badTranscript = in.readBoolean();
+
+            int numWords = in.readInt();
+            List<WordAlignment> words = new ArrayList<WordAlignment>(numWords);
+            for (int i = 0; i < numWords; ++i) {
+                String word = in.readUTF();
+                long start = in.readLong();
+                long end = in.readLong();
+                words.add(new WordAlignment(word,
+                            (start == NO_TIME) ? null : new TimeFrame(start, end)));
+            }
+            FrameTable frames = FrameTable.read(in, words);
+            return new TranscriptAlignment(words, frames, badTranscript);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,406 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cmu.sphinx.util.TimeFrame;
+
+/**
+ * Binary file of transcript alignments.
+ *
+ * Layout (big endian):
+ *   int magic ("ALGN"), int version, int frame shift (ms)
+ * followed by one record per alignment:
+ *   string name
+ *   int string count, string[count]
+ *   int frame count, then one column at a time:
+ *     int[] row, int[] word string, int[] triphone string, int[] state,
+ *     int[] mixture id, float[] score, byte[] speech
+ *   int word count, then int[] word string, long[] start, long[] end
+ *   int segment count, then per segment:
+ *     long[2] left, long[2] time, long[2] right, int word count,
+ *     int[] word index
+ *
+ * Strings are an int byte length followed by UTF-8 bytes, with a length
+ * of -1 for null.  Missing ids are -1 and missing times NO_TIME.  Frames
+ * that are not aligned carry no word, triphone, state, mixture or score.
+ */
+public class AlignmentFile {
+    public static final int MAGIC = 0x414c474e;
+    public static final int VERSION = 1;
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    /** System property holding the path of a binary output file. */
+    public static final String PROP_OUTPUT = "dump.output";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Opens the sink requested through the dump.output system property:
+     * a binary file if it is set, otherwise text on standard output.
+     * @return alignment sink
+     */
+    public static AlignmentSink openSink() throws IOException {
+        String path = System.getProperty(PROP_OUTPUT);
+        if (path == null) return new TextAlignmentSink(System.out);
+        return new Writer(new File(path));
+    }
+
+    /**
+     * Writes alignments through a buffered channel.  Frames are read
+     * straight from the FrameTable columns.
+     */
+    public static class Writer implements AlignmentSink {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        public Writer(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "rw");
+            this.file.setLength(0);
+            this.channel = this.file.getChannel();
+            this.buffer = ByteBuffer.allocateDirect(1 << 16);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(FrameTable.FRAME_SHIFT);
+        }
+
+        public void write(String name, TranscriptAlignment t) throws IOException {
+            FrameTable frames = t.frames;
+            List<Segment> segments = t.getSegments();
+
+            // String ids of words and triphones.
+            List<String> strings = new ArrayList<String>();
+            Map<String, Integer> stringIds = new HashMap<String, Integer>();
+            int[] wordStrings = new int[t.words.size()];
+            for (int i = 0; i < t.words.size(); ++i) {
+                wordStrings[i] = intern(t.words.get(i).word, strings, stringIds);
+            }
+            int[][] segmentWords = getWordIndices(t.words, segments);
+            int[] triphoneStrings = new int[UnitTable.size()];
+            Arrays.fill(triphoneStrings, -1);
+
+            int numFrames = 0;
+            for (int row = frames.nextRow(0); row >= 0; row = frames.nextRow(row + 1)) {
+                int id = frames.getTriphoneId(row);
+                if (frames.isAligned(row) && triphoneStrings[id] < 0) {
+                    triphoneStrings[id] = intern(frames.getTriphone(row), strings, stringIds);
+                }
+                ++numFrames;
+            }
+
+            putString(name);
+            putInt(strings.size());
+            for (String s : strings) putString(s);
+
+            putInt(numFrames);
+            for (int row = frames.nextRow(0); row >= 0; row = frames.nextRow(row + 1))
+                putInt(row);
+            for (int row = frames.nextRow(0); row >= 0; row = frames.nextRow(row + 1))
+                putInt(frames.isAligned(row) ? wordStrings[frames.getWordIndex(row)] : -1);
+            for (int row = frames.nextRow(0); row >= 0; row = frames.nextRow(row + 1))
+                putInt(frames.isAligned(row) ? triphoneStrings[frames.getTriphoneId(row)] : -1);
+            for (int row = frames.nextRow(0); row >= 0; row = frames.nextRow(row + 1))
+                putInt(frames.isAligned(row) ? frames.getStateId(row) : -1);
+            for (int row = frames.nextRow(0); row >= 0; row = frames.nextRow(row + 1))
+                putInt(frames.isAligned(row) ? frames.getMixtureId(row) : -1);
+            for (int row = frames.nextRow(0); row >= 0; row = frames.nextRow(row + 1))
+                putFloat(frames.isAligned(row) ? frames.getScore(row) : 0);
+            for (int row = frames.nextRow(0); row >= 0; row = frames.nextRow(row + 1))
+                putByte(frames.isSpeech(row) ? 1 : 0);
+
+            putInt(t.words.size());
+            for (int i = 0; i < wordStrings.length; ++i) putInt(wordStrings[i]);
+            for (WordAlignment w : t.words) putLong((w.time == null) ? NO_TIME : w.time.getStart());
+            for (WordAlignment w : t.words) putLong((w.time == null) ? NO_TIME : w.time.getEnd());
+
+            putInt(segments.size());
+            for (int i = 0; i < segments.size(); ++i) {
+                Segment s = segments.get(i);
+                putTimeFrame(s.left);
+                putTimeFrame(s.time);
+                putTimeFrame(s.right);
+                putInt(segmentWords[i].length);
+                for (int index : segmentWords[i]) putInt(index);
+            }
+        }
+
+        /**
+         * Finds the transcript position of every segment word.  Segments
+         * hold words in transcript order, but not always the same objects
+         * as the transcript (segments rebuilt from the cache, or streamed),
+         * so words are matched by position, spelling and time.
+         * @param words transcript words
+         * @param segments segments over those words
+         * @return word indices by segment
+         */
+        private static int[][] getWordIndices(List<WordAlignment> words,
+                List<Segment> segments) throws IOException {
+            int[][] indices = new int[segments.size()][];
+            int next = 0;
+            for (int i = 0; i < segments.size(); ++i) {
+                List<WordAlignment> segmentWords = segments.get(i).words;
+                indices[i] = new int[segmentWords.size()];
+                for (int j = 0; j < segmentWords.size(); ++j) {
+                    WordAlignment w = segmentWords.get(j);
+                    while (next < words.size() && !sameWord(words.get(next), w)) ++next;
+                    if (next == words.size())
+                        throw new IOException("Segment word not in transcript order: " + w.word);
+                    indices[i][j] = next++;
+                }
+            }
+            return indices;
+        }
+
+        private static boolean sameWord(WordAlignment a, WordAlignment b) {
+            if (a == b) return true;
+            if (a.word == null ? b.word != null : !a.word.equals(b.word)) return false;
+            if (a.time == null || b.time == null) return a.time == b.time;
+            return a.time.getStart() == b.time.getStart()
+                && a.time.getEnd() == b.time.getEnd();
+        }
+
+        public void close() throws IOException {
+            flush();
+            file.close();
+        }
+
+        private static int intern(String s, List<String> strings, Map<String, Integer> ids) {
+            Integer id = ids.get(s);
+            if (id == null) {
+                id = strings.size();
+                strings.add(s);
+                ids.put(s, id);
+            }
+            return id;
+        }
+
+        private void putTimeFrame(TimeFrame time) throws IOException {
+            putLong((time == null) ? NO_TIME : time.getStart());
+            putLong((time == null) ? NO_TIME : time.getEnd());
+        }
+
+        private void putString(String s) throws IOException {
+            if (s == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(UTF8);
+            putInt(bytes.length);
+            if (bytes.length > buffer.capacity()) {
+                flush();
+                ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+                while (wrapped.hasRemaining()) channel.write(wrapped);
+            } else {
+                ensure(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+
+        private void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        private void putFloat(float value) throws IOException {
+            ensure(4);
+            buffer.putFloat(value);
+        }
+
+        private void putByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads alignments back one record at a time.  Frame columns are
+     * reused from record to record.
+     */
+    public static class Reader {
+        private final DataInputStream in;
+        private final int frameShift;
+
+        private String name;
+        private String[] strings = new String[0];
+        private int numFrames;
+        private int[] rows = new int[0];
+        private int[] words = new int[0];
+        private int[] triphones = new int[0];
+        private int[] states = new int[0];
+        private int[] mixtures = new int[0];
+        private float[] scores = new float[0];
+        private boolean[] speech = new boolean[0];
+        private List<WordAlignment> wordAlignments;
+        private List<Segment> segments;
+
+        public Reader(File file) throws IOException {
+            this.in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            if (in.readInt() != MAGIC) {
+                in.close();
+                throw new IOException("Not an alignment file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                in.close();
+                throw new IOException("Unsupported alignment file version " + version);
+            }
+            this.frameShift = in.readInt();
+        }
+
+        /**
+         * Moves to the next alignment.
+         * @return false once every alignment has been read
+         */
+        public boolean next() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            name = readString(length);
+
+            strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; ++i) strings[i] = readString(in.readInt());
+
+            numFrames = in.readInt();
+            if (rows.length < numFrames) {
+                rows = new int[numFrames];
+                words = new int[numFrames];
+                triphones = new int[numFrames];
+                states = new int[numFrames];
+                mixtures = new int[numFrames];
+                scores = new float[numFrames];
+                speech = new boolean[numFrames];
+            }
+            for (int i = 0; i < numFrames; ++i) rows[i] = in.readInt();
+            for (int i = 0; i < numFrames; ++i) words[i] = in.readInt();
+            for (int i = 0; i < numFrames; ++i) triphones[i] = in.readInt();
+            for (int i = 0; i < numFrames; ++i) states[i] = in.readInt();
+            for (int i = 0; i < numFrames; ++i) mixtures[i] = in.readInt();
+            for (int i = 0; i < numFrames; ++i) scores[i] = in.readFloat();
+            for (int i = 0; i < numFrames; ++i) speech[i] = in.readByte() != 0;
+
+            int numWords = in.readInt();
+            int[] wordStrings = new int[numWords];
+            long[] starts = new long[numWords];
+            for (int i = 0; i < numWords; ++i) wordStrings[i] = in.readInt();
+            for (int i = 0; i < numWords; ++i) starts[i] = in.readLong();
+            wordAlignments = new ArrayList<WordAlignment>(numWords);
+            for (int i = 0; i < numWords; ++i) {
+                long end = in.readLong();
+                wordAlignments.add(new WordAlignment(strings[wordStrings[i]],
+                            (starts[i] == NO_TIME) ? null : new TimeFrame(starts[i], end)));
+            }
+
+            int numSegments = in.readInt();
+            segments = new ArrayList<Segment>(numSegments);
+            for (int i = 0; i < numSegments; ++i) {
+                TimeFrame left = readTimeFrame();
+                TimeFrame time = readTimeFrame();
+                TimeFrame right = readTimeFrame();
+                Segment segment = new Segment(left, time, right);
+                int count = in.readInt();
+                for (int j = 0; j < count; ++j) {
+                    segment.words.add(wordAlignments.get(in.readInt()));
+                }
+                segments.add(segment);
+            }
+            return true;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getFrameCount() {
+            return numFrames;
+        }
+
+        public long getTime(int frame) {
+            return (long) rows[frame] * frameShift;
+        }
+
+        public boolean isAligned(int frame) {
+            return words[frame] >= 0;
+        }
+
+        public String getWord(int frame) {
+            return (words[frame] < 0) ? null : strings[words[frame]];
+        }
+
+        public String getTriphone(int frame) {
+            return (triphones[frame] < 0) ? null : strings[triphones[frame]];
+        }
+
+        public int getStateId(int frame) {
+            return states[frame];
+        }
+
+        public int getMixtureId(int frame) {
+            return mixtures[frame];
+        }
+
+        public float getScore(int frame) {
+            return scores[frame];
+        }
+
+        public boolean isSpeech(int frame) {
+            return speech[frame];
+        }
+
+        public List<WordAlignment> getWords() {
+            return wordAlignments;
+        }
+
+        public List<Segment> getSegments() {
+            return segments;
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String readString(int length) throws IOException {
+            if (length < 0) return null;
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, UTF8);
+        }
+
+        private TimeFrame readTimeFrame() throws IOException {
+            long start = in.readLong();
+            long end = in.readLong();
+            return (start == NO_TIME) ? null : new TimeFrame(start, end);
+        }
+    }
+}
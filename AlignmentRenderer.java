@@ -0,0 +1,40 @@
+import java.io.File;
+
+/**
+ * Prints a binary alignment file in the text format of Dumper and Test.
+ */
+public class AlignmentRenderer {
+    public static void main(String args[]) throws Exception {
+        String path = null;
+        if (args.length > 0) {
+            path = args[0];
+        } else {
+            System.err.println("Usage: java AlignmentRenderer <alignment file>");
+            System.exit(-1);
+        }
+
+        AlignmentFile.Reader reader = new AlignmentFile.Reader(new File(path));
+        try {
+            while (reader.next()) {
+                String name = reader.getName();
+                if (name != null) System.out.println(name);
+
+                for (int i = 0; i < reader.getFrameCount(); ++i) {
+                    boolean aligned = reader.isAligned(i);
+                    System.out.println(FrameAlignment.format(reader.getTime(i),
+                                reader.getWord(i),
+                                reader.getTriphone(i),
+                                aligned ? Integer.valueOf(reader.getStateId(i)) : null,
+                                aligned ? Float.valueOf(reader.getScore(i)) : null,
+                                reader.isSpeech(i)));
+                }
+                for (WordAlignment w : reader.getWords()) System.out.println(w);
+                for (Segment s : reader.getSegments()) System.out.println(s);
+
+                if (name != null) System.out.println();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cmu.sphinx.decoder.adaptation.*;
+import edu.cmu.sphinx.alignment.USEnglishTokenizer;
+import edu.cmu.sphinx.api.*;
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.*;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.*;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+
+/**
+ * Holds everything needed to align one file at a time: a Context with its
+ * own front ends and speech source, and an aligner.
+ * A session must only be used by one thread at a time, but any number of
+ * sessions can be used concurrently.  Sessions are handed out and taken
+ * back by the ModelRegistry.
+ */
+public class AlignmentSession {
+    public final ModelRegistry.ModelKey key;
+    private final Context context;
+    private final SpeechAligner aligner;
+
+    public AlignmentSession(ModelRegistry.ModelKey key) throws Exception {
+        this.key = key;
+
+        Configuration config = new Configuration();
+        config.setAcousticModelPath(key.acousticModelPath);
+        config.setDictionaryPath(key.dictionaryPath);
+        this.context = new Context(config);
+        this.context.setLocalProperty("trivialScorer->frontend", "unmarkedFrontEnd");
+        if (key.transformPath != null) {
+            ClusteredDensityFileData clusters = new ClusteredDensityFileData(context.getLoader(), 1);
+            Transform transform = new Transform((Sphinx3Loader)context.getLoader(), 1);
+            transform.load(key.transformPath);
+            context.getLoader().update(transform, clusters);
+        }
+
+        this.aligner = new SpeechAligner(key.acousticModelPath,
+                key.dictionaryPath, key.g2pPath);
+        this.aligner.setTokenizer(new USEnglishTokenizer());
+        if (key.transformPath != null) this.aligner.setTransform(key.transformPath);
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public SpeechAligner getSpeechAligner() {
+        return aligner;
+    }
+
+    /**
+     * Returns this session to the registry.
+     */
+    public void close() {
+        ModelRegistry.release(this);
+    }
+
+    /**
+     * Extracts speech classified data from an input stream.
+     * @param audioUrl url of audio file
+     * @return list of speech classified data
+     */
+    public List<SpeechClassifiedData> getSpeechClassifiedData(URL audioUrl) throws Exception {
+        return getSpeechClassifiedData(new AudioBuffer(audioUrl));
+    }
+
+    public List<SpeechClassifiedData> getSpeechClassifiedData(AudioBuffer audio) throws Exception {
+        List<SpeechClassifiedData> out = new ArrayList<SpeechClassifiedData>();
+        ConfigurationManager cm = context.getConfigurationManager();
+
+        FrontEnd frontEnd = cm.lookup("speechFrontEnd");
+        Metrics.Timer timer = Metrics.start(Metrics.CLASSIFY);
+        context.setSpeechSource(audio.openStream());
+
+        Data data = null;
+        while ((data = frontEnd.getData()) != null) {
+            if (data instanceof SpeechClassifiedData) {
+                out.add((SpeechClassifiedData) data);
+            }
+        }
+        timer.stop(out.size());
+        return out;
+    }
+
+    /**
+     * Extracts feature data from an input stream, or loads it from the
+     * FeatureStore when the store is enabled.
+     * @param audioUrl url of audio file
+     * @return list of feature data
+     */
+    public List<FloatData> getFeatures(URL audioUrl) throws Exception {
+        return getFeatures(new AudioBuffer(audioUrl));
+    }
+
+    /**
+     * Gets the features of buffered audio, from the FeatureStore when the
+     * store is enabled.  Features missing from the store are extracted
+     * and stored.
+     * @param audio buffered audio
+     * @return list of feature data
+     */
+    public List<FloatData> getFeatures(AudioBuffer audio) throws Exception {
+        if (!FeatureStore.isEnabled()) return extractFeatures(audio);
+
+        String storeKey = FeatureStore.getKey(audio, key);
+        List<FloatData> features = FeatureStore.load(storeKey);
+        if (features == null) {
+            features = extractFeatures(audio);
+            FeatureStore.store(storeKey, features);
+        }
+        return features;
+    }
+
+    private List<FloatData> extractFeatures(AudioBuffer audio) throws Exception {
+        List<FloatData> out = new ArrayList<FloatData>();
+        ConfigurationManager cm = context.getConfigurationManager();
+
+        FrontEnd frontEnd = cm.lookup("unmarkedFrontEnd");
+        Metrics.Timer timer = Metrics.start(Metrics.FRONT_END);
+        context.setSpeechSource(audio.openStream());
+
+        Data data = null;
+        while ((data = frontEnd.getData()) != null) {
+            if (data instanceof FloatData) {
+                out.add((FloatData) data);
+            }
+        }
+        timer.stop(out.size());
+        return out;
+    }
+
+    /**
+     * Extracts speech classified data and feature data from a single pass
+     * over buffered audio.  The speech classifier and the cepstral pipeline
+     * share one data source and data blocker.
+     * When the FeatureStore holds the features of the audio, only the
+     * speech classifier is run.
+     * @param audio buffered audio
+     * @return speech classified data and features
+     */
+    public FrontEndData getFrontEndData(AudioBuffer audio) throws Exception {
+        String storeKey = null;
+        if (FeatureStore.isEnabled()) {
+            storeKey = FeatureStore.getKey(audio, key);
+            List<FloatData> stored = FeatureStore.load(storeKey);
+            if (stored != null) {
+                return new FrontEndData(getSpeechClassifiedData(audio), stored);
+            }
+        }
+
+        List<FloatData> features = new ArrayList<FloatData>();
+        ConfigurationManager cm = context.getConfigurationManager();
+
+        FrontEnd frontEnd = cm.lookup("alignmentFrontEnd");
+        SpeechTap tap = cm.lookup("speechTap");
+        tap.drain();
+        // Speech classification shares this pass and is counted with it.
+        Metrics.Timer timer = Metrics.start(Metrics.FRONT_END);
+        context.setSpeechSource(audio.openStream());
+
+        Data data = null;
+        while ((data = frontEnd.getData()) != null) {
+            if (data instanceof FloatData) {
+                features.add((FloatData) data);
+            }
+        }
+        timer.stop(features.size());
+        if (storeKey != null) FeatureStore.store(storeKey, features);
+        return new FrontEndData(tap.drain(), features);
+    }
+
+    /**
+     * Creates a SenoneDump containing acoustic scores for each Senone for
+     * each frame in the input stream.
+     * @param audioUrl url of audio file
+     * @return senone dump
+     */
+    public SenoneDump getSenoneDump(URL audioUrl) throws Exception {
+        SenoneDump dmp = new SenoneDump(context.getLoader());
+        try {
+            dmp.addFrames(getFeatures(audioUrl));
+        } finally {
+            dmp.shutdown();
+        }
+        return dmp;
+    }
+
+    /**
+     * Creates a word alignment given audio and a transcript.
+     * @param audioUrl audio location
+     * @param transcript transcript
+     * @return word alignment list
+     */
+    public List<WordResult> getWordAlignment(URL audioUrl, String transcript) throws Exception {
+        return getWordAlignment(new AudioBuffer(audioUrl), transcript);
+    }
+
+    public List<WordResult> getWordAlignment(AudioBuffer audio, String transcript) throws Exception {
+        return aligner.align(audio.getUrl(), transcript);
+    }
+
+    /**
+     * Splits a transcript into the words the aligner will look for.
+     * @param transcript transcript
+     * @return list of words
+     */
+    public List<String> getTranscriptWords(String transcript) {
+        return aligner.sentenceToWords(aligner.getTokenizer().expand(transcript));
+    }
+
+    public TranscriptAlignment getTranscriptAlignment(URL audioUrl, String transcript) throws Exception {
+        // Read the audio once and share it between the aligner and the
+        // front end.
+        return getTranscriptAlignment(new AudioBuffer(audioUrl), transcript);
+    }
+
+    public TranscriptAlignment getTranscriptAlignment(AudioBuffer audio, String transcript) throws Exception {
+        FrontEndData frontEndData = getFrontEndData(audio);
+        int numFrames = frontEndData.features.size();
+
+        Metrics.Timer timer = Metrics.start(Metrics.SEARCH);
+        List<WordResult> wordResults = getWordAlignment(audio, transcript);
+        timer.stop(numFrames);
+
+        timer = Metrics.start(Metrics.FRAMES);
+        TranscriptAlignment t = new TranscriptAlignment(getTranscriptWords(transcript),
+                wordResults,
+                frontEndData.speechData,
+                frontEndData.features);
+        timer.stop(numFrames);
+        return t;
+    }
+}
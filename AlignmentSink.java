@@ -0,0 +1,16 @@
+import java.io.IOException;
+
+/**
+ * Destination for the frames, words and segments of transcript
+ * alignments.
+ */
+public interface AlignmentSink {
+    /**
+     * Writes one alignment.
+     * @param name name of the aligned file, or null
+     * @param t transcript alignment
+     */
+    void write(String name, TranscriptAlignment t) throws IOException;
+
+    void close() throws IOException;
+}
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.security.MessageDigest;
+
+/**
+ * Audio file held in memory so that every pass over it reads from the same
+ * bytes instead of going back to disk.  Local files are memory-mapped, and
+ * slices share the mapping of the file they were cut from.
+ *
+ * Streams and URLs serve the raw samples without the WAV header, ready for
+ * StreamDataSource.
+ */
+public class AudioBuffer {
+    public final URL source;
+    private final WavFile wav;
+    private final URL url;
+
+    public AudioBuffer(URL source) throws IOException {
+        this(source, WavFile.read(source));
+    }
+
+    private AudioBuffer(URL source, WavFile wav) throws IOException {
+        this.source = source;
+        this.wav = wav;
+        this.url = createUrl();
+    }
+
+    /**
+     * Opens a new stream over the buffered samples.
+     * @return input stream of raw samples
+     */
+    public InputStream openStream() {
+        return wav.openStream();
+    }
+
+    /**
+     * Gets a URL that serves the buffered samples, for APIs that insist on
+     * opening their own streams.
+     * @return url backed by this buffer
+     */
+    public URL getUrl() {
+        return url;
+    }
+
+    public WavFile getWavFile() {
+        return wav;
+    }
+
+    public int size() {
+        return wav.getDataSize();
+    }
+
+    /**
+     * Adds the audio format and samples to a digest.
+     * @param digest message digest
+     */
+    public void digest(MessageDigest digest) {
+        wav.digest(digest);
+    }
+
+    /**
+     * Gets the length of the audio.
+     * @return duration in milliseconds
+     */
+    public long getDuration() {
+        return wav.getDuration();
+    }
+
+    /**
+     * Gets part of the audio.  The slice shares this buffer's memory.
+     * @param start start time in milliseconds
+     * @param end end time in milliseconds
+     * @return audio buffer holding the slice
+     */
+    public AudioBuffer slice(long start, long end) throws IOException {
+        int from = toOffset(start);
+        int to = Math.max(from, toOffset(end));
+        return new AudioBuffer(source, wav.slice(from, to));
+    }
+
+    private int toOffset(long time) {
+        long offset = time * wav.byteRate / 1000;
+        offset -= offset % wav.blockAlign;
+        return (int) Math.max(0, Math.min(offset, wav.getDataSize()));
+    }
+
+    private URL createUrl() throws MalformedURLException {
+        URLStreamHandler handler = new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL u) {
+                return new URLConnection(u) {
+                    @Override
+                    public void connect() { }
+
+                    @Override
+                    public InputStream getInputStream() {
+                        return openStream();
+                    }
+                };
+            }
+        };
+        return new URL(null, "audio:" + source.toString(), handler);
+    }
+}
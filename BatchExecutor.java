@@ -0,0 +1,99 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs a task over every line of a batch on a pool of worker threads.
+ * Results are handed to the sink on the calling thread in batch order, so
+ * output is the same regardless of the number of workers.
+ *
+ * Workers are long lived, so each one keeps its own Context and aligner
+ * (see SpeechTools and ModelRegistry) for the whole batch.
+ */
+public class BatchExecutor {
+    /** System property holding the number of workers. */
+    public static final String PROP_WORKERS = "batch.workers";
+
+    public interface Task<T> {
+        T process(String line) throws Exception;
+    }
+
+    public interface Sink<T> {
+        void accept(String line, T result) throws Exception;
+    }
+
+    /**
+     * Gets the number of workers requested through the batch.workers
+     * system property.  Defaults to a single worker.
+     * @return number of workers
+     */
+    public static int getWorkerCount() {
+        int workers = Integer.getInteger(PROP_WORKERS, 1);
+        return (workers < 1) ? 1 : workers;
+    }
+
+    public static <T> void run(List<String> lines, Task<T> task, Sink<T> sink)
+            throws Exception {
+        run(lines, getWorkerCount(), task, sink);
+    }
+
+    /**
+     * Processes each batch line with the given task.
+     * At most two results per worker are held in memory at once.
+     *
+     * @param lines batch lines
+     * @param workers number of worker threads
+     * @param task task run on a worker for each line
+     * @param sink consumer of results, called in batch order
+     */
+    public static <T> void run(List<String> lines, int workers,
+            final Task<T> task, Sink<T> sink) throws Exception {
+        ExecutorService executor =
+            Executors.newFixedThreadPool(workers, new WorkerFactory());
+        Queue<Future<T>> pending = new ArrayDeque<Future<T>>();
+        int window = workers * 2;
+        int next = 0;
+        int done = 0;
+
+        try {
+            while (done < lines.size()) {
+                while (next < lines.size() && pending.size() < window) {
+                    final String line = lines.get(next++);
+                    pending.add(executor.submit(new Callable<T>() {
+                        public T call() throws Exception {
+                            return task.process(line);
+                        }
+                    }));
+                }
+
+                T result;
+                try {
+                    result = pending.remove().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) throw (Exception) cause;
+                    throw e;
+                }
+                sink.accept(lines.get(done++), result);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private int count = 0;
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "batch-worker-" + (count++));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
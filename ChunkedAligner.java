@@ -0,0 +1,249 @@
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.cmu.sphinx.alignment.LongTextAligner;
+import edu.cmu.sphinx.api.*;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.TimeFrame;
+
+/**
+ * Aligns long recordings in pieces.
+ * A quick recognition pass over the whole recording is matched against
+ * the transcript with a LongTextAligner, and the recording is cut between
+ * words in runs that the recognizer got right.  Each piece is then aligned
+ * on its own session, several at a time, and the pieces are joined back
+ * into one TranscriptAlignment.
+ *
+ * Alignment search cost grows with the length of the audio, so aligning
+ * pieces of a fixed length keeps both time and memory per piece bounded.
+ */
+public class ChunkedAligner {
+    /** System property holding the target piece length in seconds. */
+    public static final String PROP_CHUNK = "align.chunk";
+    /** System property holding the number of pieces aligned at once. */
+    public static final String PROP_WORKERS = "align.workers";
+
+    // Consecutive words that must match the recognizer to cut in the middle.
+    private static final int ANCHOR_LENGTH = 4;
+
+    /**
+     * Gets the piece length requested through the align.chunk system
+     * property.  Defaults to 0, which aligns whole files.
+     * @return piece length in milliseconds
+     */
+    public static long getChunkLength() {
+        return Math.max(0, Long.getLong(PROP_CHUNK, 0)) * 1000;
+    }
+
+    public static int getWorkerCount() {
+        int workers = Integer.getInteger(PROP_WORKERS, 1);
+        return (workers < 1) ? 1 : workers;
+    }
+
+    public static TranscriptAlignment align(AlignmentSession session,
+            AudioBuffer audio, String transcript) throws Exception {
+        return align(session, audio, transcript, getChunkLength(), getWorkerCount());
+    }
+
+    /**
+     * Aligns a recording in pieces of roughly the given length.
+     * Recordings shorter than two pieces, or without usable anchors, are
+     * aligned whole on the given session.
+     *
+     * @param session session of the calling thread
+     * @param audio buffered audio
+     * @param transcript transcript
+     * @param chunkLength target piece length in milliseconds
+     * @param workers number of pieces aligned at once
+     * @return joined alignment
+     */
+    public static TranscriptAlignment align(AlignmentSession session,
+            final AudioBuffer audio, String transcript, long chunkLength,
+            int workers) throws Exception {
+        List<String> words = session.getTranscriptWords(transcript);
+        final List<Chunk> chunks = getChunks(session, audio, words, chunkLength);
+        if (chunks.size() < 2) {
+            return session.getTranscriptAlignment(audio, transcript);
+        }
+
+        // Pieces are aligned on sessions of their own, so the caller's
+        // session stays free.
+        final ModelRegistry.ModelKey key = session.key;
+        workers = Math.max(1, Math.min(workers, chunks.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<TranscriptAlignment>> parts =
+            new ArrayList<Future<TranscriptAlignment>>();
+
+        try {
+            for (final Chunk chunk : chunks) {
+                parts.add(executor.submit(new Callable<TranscriptAlignment>() {
+                    public TranscriptAlignment call() throws Exception {
+                        AlignmentSession s = ModelRegistry.acquire(key);
+                        try {
+                            return s.getTranscriptAlignment(
+                                audio.slice(chunk.start, chunk.end), chunk.transcript);
+                        } finally {
+                            s.close();
+                        }
+                    }
+                }));
+            }
+
+            List<WordAlignment> joinedWords = new ArrayList<WordAlignment>();
+            List<FrameTable> tables = new ArrayList<FrameTable>();
+            long[] starts = new long[chunks.size()];
+            int[] wordOffsets = new int[chunks.size()];
+            boolean badTranscript = true;
+
+            for (int i = 0; i < chunks.size(); ++i) {
+                TranscriptAlignment part;
+                try {
+                    part = parts.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) throw (Exception) cause;
+                    throw e;
+                }
+
+                long start = chunks.get(i).start;
+                starts[i] = start;
+                wordOffsets[i] = joinedWords.size();
+                for (WordAlignment word : part.words) {
+                    joinedWords.add(new WordAlignment(word.word, (word.time == null)
+                                ? null
+                                : new TimeFrame(word.time.getStart() + start,
+                                    word.time.getEnd() + start)));
+                }
+                tables.add(part.frames);
+                badTranscript &= part.badTranscript;
+            }
+
+            return new TranscriptAlignment(joinedWords,
+                    FrameTable.join(joinedWords, tables, starts, wordOffsets),
+                    badTranscript);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits a recording and its transcript into pieces at anchor words.
+     * @param session session whose models the recognizer should match
+     * @param audio buffered audio
+     * @param words transcript words
+     * @param chunkLength target piece length in milliseconds
+     * @return pieces, in time order
+     */
+    private static List<Chunk> getChunks(AlignmentSession session, AudioBuffer audio,
+            List<String> words, long chunkLength) throws Exception {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        long duration = audio.getDuration();
+        if (chunkLength <= 0 || duration < 2 * chunkLength) {
+            chunks.add(new Chunk(0, duration, words));
+            return chunks;
+        }
+
+        List<WordResult> hypothesis = recognize(audio, session.key.transformPath);
+        List<String> spellings = new ArrayList<String>();
+        for (WordResult wr : hypothesis) {
+            spellings.add(wr.getWord().getSpelling());
+        }
+        int[] aid = new LongTextAligner(spellings, 2).align(words);
+
+        long start = 0;
+        int first = 0;
+        for (int i = 0; i + ANCHOR_LENGTH <= aid.length; ++i) {
+            if (!isAnchor(aid, i)) continue;
+
+            // Cut in the gap between the two middle words of the anchor.
+            int mid = i + ANCHOR_LENGTH / 2;
+            long cut = (hypothesis.get(aid[mid - 1]).getTimeFrame().getEnd()
+                    + hypothesis.get(aid[mid]).getTimeFrame().getStart()) / 2;
+            cut -= cut % FrameTable.FRAME_SHIFT;
+
+            if (cut - start >= chunkLength && duration - cut >= chunkLength / 2) {
+                chunks.add(new Chunk(start, cut, words.subList(first, mid)));
+                start = cut;
+                first = mid;
+                i += ANCHOR_LENGTH - 1;
+            }
+        }
+        chunks.add(new Chunk(start, duration, words.subList(first, words.size())));
+        return chunks;
+    }
+
+    /**
+     * Checks whether a run of transcript words starting at the given index
+     * was recognized word for word.
+     */
+    private static boolean isAnchor(int[] aid, int index) {
+        for (int i = index; i < index + ANCHOR_LENGTH; ++i) {
+            if (aid[i] == -1) return false;
+            if (i > index && aid[i] != aid[i - 1] + 1) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Recognizes a recording with the generic language model.
+     * @param audio buffered audio
+     * @param transformPath transform to apply, or null
+     * @return recognized words, without fillers
+     */
+    private static List<WordResult> recognize(AudioBuffer audio, String transformPath)
+            throws Exception {
+        StreamSpeechRecognizer recognizer = RecognizerPool.acquire(transformPath);
+        List<WordResult> words = new ArrayList<WordResult>();
+
+        Metrics.Timer timer = Metrics.start(Metrics.DECODE);
+        InputStream stream = audio.openStream();
+
+        boolean finished = false;
+        try {
+            SpeechResult result;
+            recognizer.startRecognition(stream);
+            while ((result = recognizer.getResult()) != null) {
+                for (WordResult wr : result.getWords()) {
+                    if (!wr.getWord().isFiller()) words.add(wr);
+                }
+            }
+            recognizer.stopRecognition();
+            finished = true;
+        } finally {
+            stream.close();
+            timer.stop();
+
+            // As in SpeechTools.transcribe(), a recognizer that failed
+            // mid-utterance is dropped rather than handed back.
+            if (finished) RecognizerPool.release(recognizer, transformPath);
+        }
+        return words;
+    }
+
+    /**
+     * Piece of a recording and the transcript words spoken in it.
+     */
+    private static class Chunk {
+        final long start;
+        final long end;
+        final String transcript;
+
+        Chunk(long start, long end, List<String> words) {
+            this.start = start;
+            this.end = end;
+
+            StringBuilder sb = new StringBuilder();
+            for (String word : words) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(word);
+            }
+            this.transcript = sb.toString();
+        }
+    }
+}
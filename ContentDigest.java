@@ -0,0 +1,90 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SHA-256 content hashes used to key the on-disk caches.
+ */
+public class ContentDigest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Digests of model files, which do not change while a job runs.
+    private static final Map<String, byte[]> pathDigests = new HashMap<String, byte[]>();
+
+    private final MessageDigest digest;
+
+    public ContentDigest() throws Exception {
+        this.digest = MessageDigest.getInstance("SHA-256");
+    }
+
+    public ContentDigest update(String s) {
+        if (s != null) digest.update(s.getBytes(UTF8));
+        digest.update((byte) 0);
+        return this;
+    }
+
+    public ContentDigest update(AudioBuffer audio) {
+        audio.digest(digest);
+        return this;
+    }
+
+    /**
+     * Adds the contents of a model file or directory.  Paths that do not
+     * exist on disk are added by name.
+     * @param path path of file or directory, or null
+     * @return this digest
+     */
+    public ContentDigest updatePath(String path) throws Exception {
+        digest.update(getPathDigest(path));
+        return this;
+    }
+
+    /**
+     * Completes the digest.
+     * @return hex encoded hash
+     */
+    public String toHex() {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private static synchronized byte[] getPathDigest(String path) throws Exception {
+        if (path == null) return new byte[0];
+        byte[] cached = pathDigests.get(path);
+        if (cached == null) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            File file = new File(path);
+            if (file.exists()) digestFile(digest, file);
+            else digest.update(path.getBytes(UTF8));
+            cached = digest.digest();
+            pathDigests.put(path, cached);
+        }
+        return cached;
+    }
+
+    private static void digestFile(MessageDigest digest, File file) throws IOException {
+        digest.update(file.getName().getBytes(UTF8));
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            Arrays.sort(children);
+            for (File child : children) digestFile(digest, child);
+            return;
+        }
+
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -25,7 +25,7 @@ public class Dumper {
         if (args.length > 0) {
             batchPath = args[0];
         } else {
-            System.err.println("Usage: java Segmenter <batch> [transform]");
+            System.err.println("Usage: java [-Dbatch.workers=N] [-Dmetrics.output=<file>] [-Dalignment.cache=<dir>] [-Dmodel.snapshot=<file>] [-Ddump.output=<file>] Dumper <batch> [transform]");
             System.exit(-1);
         }
 
@@ -35,17 +35,28 @@ public class Dumper {
             SpeechTools.setTransform(transformPath);
         }
 
-        for (String line : BatchFile.getLines(batchPath)) {
-            System.out.println(BatchFile.getFilename(line));
-            TranscriptAlignment t = SpeechTools.getTranscriptAlignment(line);
-            for (FrameAlignment f : t.frames.values()) System.out.println(f);
-            for (WordAlignment w : t.words) System.out.println(w);
-            for (Segment s : t.getSegments()) System.out.println(s);
-            System.out.println();
+        List<String> lines = BatchFile.getLines(batchPath);
+        ModelSnapshot.update(lines);
 
-            t = null;
-            System.gc();
+        final AlignmentSink sink = AlignmentFile.openSink();
+        try {
+            BatchExecutor.run(lines,
+                new BatchExecutor.Task<TranscriptAlignment>() {
+                    public TranscriptAlignment process(String line) throws Exception {
+                        return SpeechTools.getTranscriptAlignment(line);
+                    }
+                },
+                new BatchExecutor.Sink<TranscriptAlignment>() {
+                    public void accept(String line, TranscriptAlignment t) throws Exception {
+                        sink.write(BatchFile.getFilename(line), t);
+                    }
+                });
+        } finally {
+            sink.close();
         }
 
+        AlignmentCache.print();
+        FeatureStore.print();
+        Metrics.print();
     }
 }
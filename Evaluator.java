@@ -26,7 +26,7 @@ public class Evaluator {
         if (args.length > 0) {
             batchPath = args[0];
         } else {
-            System.err.println("Usage: java Evaluator <batch> [transform]");
+            System.err.println("Usage: java [-Dbatch.workers=N] [-Dmetrics.output=<file>] Evaluator <batch> [transform]");
             System.exit(-1);
         }
 
@@ -36,23 +36,86 @@ public class Evaluator {
             SpeechTools.setTransform(transformPath);
         }
 
-        NISTAlign aligner = new NISTAlign(true, true);
+        // Load one recognizer per worker up front; transcribe() reuses them.
+        RecognizerPool.warm(BatchExecutor.getWorkerCount(), SpeechTools.getTransform());
 
-        for (String line : BatchFile.getLines(batchPath)) {
-            System.out.println("Processing... " + BatchFile.getFilename(line));
-            URL audioUrl = new File(BatchFile.getFilename(line)).toURI().toURL();
-            String transcript = BatchFile.getReference(line);
+        // Utterances are decoded in parallel but aligned here in batch
+        // order, so the totals match a serial run.
+        final NISTAlign aligner = new NISTAlign(true, true);
+        final long[] totals = new long[2];
+        long wallStart = System.nanoTime();
 
-            StringBuilder sb = new StringBuilder();
-            for (String word : new USEnglishTokenizer().expand(transcript)) {
-                sb.append(word + " ");
-            }
-            transcript = sb.toString();
+        BatchExecutor.run(BatchFile.getLines(batchPath),
+            new BatchExecutor.Task<Utterance>() {
+                public Utterance process(String line) throws Exception {
+                    return decode(line);
+                }
+            },
+            new BatchExecutor.Sink<Utterance>() {
+                public void accept(String line, Utterance u) throws Exception {
+                    int words = aligner.getTotalWords();
+                    int errors = getTotalErrors(aligner);
+                    aligner.align(u.reference, u.hypothesis);
+                    words = aligner.getTotalWords() - words;
+                    errors = getTotalErrors(aligner) - errors;
 
-            String hypothesis = SpeechTools.transcribe(audioUrl);
-            aligner.align(transcript, hypothesis);
-            System.gc();
-        }
+                    System.out.println("Processing... " + BatchFile.getFilename(line));
+                    System.out.println(u.hypothesis);
+                    System.out.printf("WER: %.2f%% RTF: %.3f\n",
+                            (words == 0) ? 0.0 : 100.0 * errors / words,
+                            getRealTimeFactor(u.decodeTime, u.duration));
+
+                    totals[0] += u.decodeTime;
+                    totals[1] += u.duration;
+                }
+            });
+
+        long wallTime = (System.nanoTime() - wallStart) / 1000000;
         aligner.printTotalSummary();
+        System.out.printf("Decode RTF: %.3f\n", getRealTimeFactor(totals[0], totals[1]));
+        System.out.printf("Wall clock RTF: %.3f\n", getRealTimeFactor(wallTime, totals[1]));
+        Metrics.print();
+    }
+
+    /**
+     * Transcribes one batch line and normalizes its reference.
+     */
+    private static Utterance decode(String line) throws Exception {
+        AudioBuffer audio = new AudioBuffer(
+                new File(BatchFile.getFilename(line)).toURI().toURL());
+
+        String reference = TranscriptNormalizer.normalize(BatchFile.getReference(line));
+
+        long start = System.nanoTime();
+        String hypothesis = SpeechTools.transcribe(audio);
+        long decodeTime = (System.nanoTime() - start) / 1000000;
+
+        return new Utterance(reference, hypothesis, decodeTime, audio.getDuration());
+    }
+
+    private static int getTotalErrors(NISTAlign aligner) {
+        return aligner.getTotalSubstitutions() + aligner.getTotalInsertions()
+            + aligner.getTotalDeletions();
+    }
+
+    private static double getRealTimeFactor(long time, long duration) {
+        return (duration == 0) ? 0.0 : (double) time / duration;
+    }
+
+    /**
+     * Decoded utterance; times are in milliseconds.
+     */
+    private static class Utterance {
+        final String reference;
+        final String hypothesis;
+        final long decodeTime;
+        final long duration;
+
+        Utterance(String reference, String hypothesis, long decodeTime, long duration) {
+            this.reference = reference;
+            this.hypothesis = hypothesis;
+            this.decodeTime = decodeTime;
+            this.duration = duration;
+        }
     }
 }
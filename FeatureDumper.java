@@ -1,10 +1,9 @@
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
-import java.io.DataOutputStream;
-import java.io.FileOutputStream;
 
 import edu.cmu.sphinx.decoder.search.Token;
 import edu.cmu.sphinx.alignment.LongTextAligner;
@@ -27,37 +26,66 @@ public class FeatureDumper {
         if (args.length > 0) {
             batchPath = args[0];
         } else {
-            System.err.println("Usage: java FeatureDumper <batch>");
+            System.err.println("Usage: java [-Dbatch.workers=N] [-Dmetrics.output=<file>] [-Dalignment.cache=<dir>] [-Dmodel.snapshot=<file>] [-Dfeature.store=<dir>] FeatureDumper <batch>");
             System.exit(-1);
         }
 
 
-        for (String line : BatchFile.getLines(batchPath)) {
-            System.out.println(BatchFile.getFilename(line));
-            String fileName = BatchFile.getFilename(line).replace("wav", "feat");
-            DataOutputStream os = new DataOutputStream(new FileOutputStream(new File(fileName)));
+        List<String> lines = BatchFile.getLines(batchPath);
+        ModelSnapshot.update(lines);
 
-            TranscriptAlignment t = SpeechTools.getTranscriptAlignment(line);
-            for (FrameAlignment f : t.frames.values()) {
-                if (f.mId != null) {
-                    StringBuilder sb = new StringBuilder(String.format("%d", f.mId));
+        BatchExecutor.run(lines,
+            new BatchExecutor.Task<Void>() {
+                public Void process(String line) throws Exception {
+                    dumpFeatures(line);
+                    return null;
+                }
+            },
+            new BatchExecutor.Sink<Void>() {
+                public void accept(String line, Void result) {
+                    System.out.println(BatchFile.getFilename(line));
+                    System.out.println();
+                }
+            });
 
-                    os.writeInt(f.mId);
+        AlignmentCache.print();
+        FeatureStore.print();
+        Metrics.print();
+    }
 
-                    for (float val : f.features.getValues()) {
-                        sb.append(String.format(" %f", val));
-                        os.writeFloat(val);
-                    }
-                    //os.writeChar(' ');
-                    //System.out.printf(sb.toString() + "\n");
+    /**
+     * Aligns a batch line and writes the labelled features of every aligned
+     * frame next to the audio file.
+     * @param line batch line
+     */
+    private static void dumpFeatures(String line) throws Exception {
+        String fileName = BatchFile.getFilename(line).replace("wav", "feat");
+
+        TranscriptAlignment t = SpeechTools.getTranscriptAlignment(line);
+        writeFeatures(t.frames, new File(fileName));
+    }
+
+    /**
+     * Writes the labelled features of every aligned frame of a table.
+     * @param frames frame table
+     * @param file feature file to write
+     */
+    static void writeFeatures(FrameTable frames, File file) throws IOException {
+        FeatureFile.Writer writer = new FeatureFile.Writer(file,
+                frames.getDimension(), FrameTable.FRAME_SHIFT,
+                (frames.getSampleRate() == 0)
+                    ? FeatureFile.DEFAULT_SAMPLE_RATE : frames.getSampleRate());
+
+        try {
+            float[] values = new float[frames.getDimension()];
+            for (int row = frames.nextRow(0); row >= 0; row = frames.nextRow(row + 1)) {
+                if (frames.isAligned(row)) {
+                    frames.copyFeatures(row, values);
+                    writer.write(frames.getMixtureId(row), values);
                 }
             }
-            os.close();
-            System.out.println();
-
-            t = null;
-            System.gc();
+        } finally {
+            writer.close();
         }
-
     }
 }
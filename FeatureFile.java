@@ -0,0 +1,180 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary file of labelled feature frames.
+ *
+ * Layout (big endian):
+ *   int magic ("FEAT"), int version, int dimension, int frame count,
+ *   int frame shift (ms), int sample rate
+ * followed by one record per frame:
+ *   int mixture id, float[dimension] features
+ *
+ * Files written before the header existed hold only the frame records,
+ * with 36 features per frame.  They are still readable.
+ */
+public class FeatureFile {
+    public static final int MAGIC = 0x46454154;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 24;
+
+    public static final int LEGACY_DIMENSION = 36;
+    public static final int DEFAULT_FRAME_SHIFT = 10;
+    public static final int DEFAULT_SAMPLE_RATE = 16000;
+
+    public final int version;
+    public final int dimension;
+    public final int frameCount;
+    public final int frameShift;
+    public final int sampleRate;
+
+    private final MappedByteBuffer buffer;
+    private final int dataStart;
+    private final int recordSize;
+
+    private FeatureFile(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.limit() >= HEADER_SIZE && buffer.getInt(0) == MAGIC) {
+            this.version = buffer.getInt(4);
+            if (version != VERSION)
+                throw new IOException("Unsupported feature file version " + version);
+            this.dimension = buffer.getInt(8);
+            this.frameCount = buffer.getInt(12);
+            this.frameShift = buffer.getInt(16);
+            this.sampleRate = buffer.getInt(20);
+            this.dataStart = HEADER_SIZE;
+        } else {
+            this.version = 0;
+            this.dimension = LEGACY_DIMENSION;
+            this.frameCount = buffer.limit() / (4 + 4 * LEGACY_DIMENSION);
+            this.frameShift = DEFAULT_FRAME_SHIFT;
+            this.sampleRate = DEFAULT_SAMPLE_RATE;
+            this.dataStart = 0;
+        }
+        this.recordSize = 4 + 4 * dimension;
+
+        // A silent or unaligned utterance is written with no frames and
+        // dimension 0, which is valid.
+        if (dimension < 0 || (dimension == 0 && frameCount != 0) || frameCount < 0
+                || dataStart + (long) frameCount * recordSize > buffer.limit())
+            throw new IOException("Truncated or corrupt feature file: expected "
+                    + frameCount + " frames of " + dimension + " features in "
+                    + buffer.limit() + " bytes");
+    }
+
+    /**
+     * Memory maps a feature file.
+     * @param fileName path of feature file
+     * @return feature file
+     */
+    public static FeatureFile open(String fileName) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return new FeatureFile(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            // The mapping stays valid after the channel is closed.
+            file.close();
+        }
+    }
+
+    public int getMixtureId(int frame) {
+        return buffer.getInt(offset(frame));
+    }
+
+    /**
+     * Gets the features of a frame without copying them.
+     * @param frame frame index
+     * @return read-only view of the frame's features
+     */
+    public FloatBuffer getFeatures(int frame) {
+        ByteBuffer view = buffer.duplicate();
+        int start = offset(frame) + 4;
+        view.position(start);
+        view.limit(start + 4 * dimension);
+        return view.slice().asFloatBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies the features of a frame.
+     * @param frame frame index
+     * @param values array of at least dimension values to fill
+     */
+    public void copyFeatures(int frame, float[] values) {
+        int start = offset(frame) + 4;
+        for (int i = 0; i < dimension; ++i) {
+            values[i] = buffer.getFloat(start + 4 * i);
+        }
+    }
+
+    private int offset(int frame) {
+        if (frame < 0 || frame >= frameCount)
+            throw new IndexOutOfBoundsException("No frame " + frame);
+        return dataStart + frame * recordSize;
+    }
+
+    /**
+     * Writes a feature file through a buffered channel.  The frame count in
+     * the header is filled in on close.
+     */
+    public static class Writer {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int dimension;
+        private int frameCount;
+
+        public Writer(File file, int dimension, int frameShift, int sampleRate)
+                throws IOException {
+            this.file = new RandomAccessFile(file, "rw");
+            this.file.setLength(0);
+            this.channel = this.file.getChannel();
+            this.buffer = ByteBuffer.allocateDirect(Math.max(1 << 16, 4 + 4 * dimension));
+            this.dimension = dimension;
+            this.frameCount = 0;
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(dimension);
+            buffer.putInt(0);
+            buffer.putInt(frameShift);
+            buffer.putInt(sampleRate);
+        }
+
+        public void write(int mId, float[] features) throws IOException {
+            if (features.length != dimension)
+                throw new IllegalArgumentException("Expected " + dimension
+                        + " features, got " + features.length);
+            if (buffer.remaining() < 4 + 4 * dimension) flush();
+
+            buffer.putInt(mId);
+            for (float val : features) buffer.putFloat(val);
+            ++frameCount;
+        }
+
+        public void close() throws IOException {
+            try {
+                flush();
+                ByteBuffer count = ByteBuffer.allocate(4);
+                count.putInt(frameCount);
+                count.flip();
+                channel.write(count, 12);
+            } finally {
+                file.close();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -3,10 +3,6 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
-import java.io.DataOutputStream;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.io.EOFException;
 import java.io.IOException;
 
 import edu.cmu.sphinx.decoder.search.Token;
@@ -34,33 +30,101 @@ public class FeatureReader {
             System.exit(-1);
         }
 
-        for (LabelledFeature f : loadFeatures(featureFile)) {
-            System.out.println(f);
+        Cursor cursor = openCursor(featureFile);
+        while (cursor.next()) {
+            System.out.println(cursor);
         }
     }
 
+    /**
+     * Opens a cursor over the labelled features in a file.
+     * @param fileName path of feature file
+     * @return cursor positioned before the first frame
+     */
+    public static Cursor openCursor(String fileName) throws IOException {
+        return new Cursor(FeatureFile.open(fileName));
+    }
+
+    /**
+     * Loads every labelled feature in a file.  Prefer openCursor() for
+     * large files, since this holds a copy of every frame.
+     * @param fileName path of feature file
+     * @return list of labelled features
+     */
     public static List<LabelledFeature> loadFeatures(String fileName) throws IOException {
-        DataInputStream is = new DataInputStream(new FileInputStream(new File(fileName)));
-        List<LabelledFeature> labelledFeatures = new ArrayList<LabelledFeature>();
-
-        while (true) {
-            try {
-                int mId = is.readInt();
-                List<Float> features = new ArrayList<Float>();
-                float curr = 0.0f;
-                
-                for (int index = 0; index < 36; ++index) {
-                    features.add(is.readFloat());
-                }
-
-                labelledFeatures.add(new LabelledFeature(mId, features));
-            } catch (EOFException e) {
-                break;
-            }
+        Cursor cursor = openCursor(fileName);
+        List<LabelledFeature> labelledFeatures =
+            new ArrayList<LabelledFeature>(cursor.getFrameCount());
+
+        while (cursor.next()) {
+            labelledFeatures.add(new LabelledFeature(cursor.getMixtureId(),
+                        cursor.getValues().clone(), cursor.getSampleRate()));
         }
         return labelledFeatures;
     }
 
+    /**
+     * Streams labelled features from a file one frame at a time.
+     * The same value array is reused for every frame, so callers must copy
+     * the values they want to keep before moving to the next frame.
+     */
+    public static class Cursor {
+        private final FeatureFile file;
+        private final float[] values;
+        private int frame;
+        private int mId;
+
+        private Cursor(FeatureFile file) {
+            this.file = file;
+            this.values = new float[file.dimension];
+            this.frame = -1;
+        }
+
+        /**
+         * Moves to the next frame.
+         * @return false once every frame has been read
+         */
+        public boolean next() {
+            if (frame + 1 >= file.frameCount) return false;
+            ++frame;
+            mId = file.getMixtureId(frame);
+            file.copyFeatures(frame, values);
+            return true;
+        }
+
+        public int getMixtureId() {
+            return mId;
+        }
+
+        /**
+         * Gets the features of the current frame.
+         * @return shared value array, overwritten by next()
+         */
+        public float[] getValues() {
+            return values;
+        }
+
+        public int getDimension() {
+            return file.dimension;
+        }
+
+        public int getFrameCount() {
+            return file.frameCount;
+        }
+
+        public int getSampleRate() {
+            return file.sampleRate;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("%d", mId));
+            for (float val : values) {
+                sb.append(String.format(" %f", val));
+            }
+            return sb.toString();
+        }
+    }
+
     public static class LabelledFeature {
         public final int mId;
         public final FloatData data;
@@ -77,6 +141,11 @@ public class FeatureReader {
             this.data = new FloatData(arr, 16000, 0);
         }
 
+        public LabelledFeature(int mId, float[] features, int sampleRate) {
+            this.mId = mId;
+            this.data = new FloatData(features, sampleRate, 0);
+        }
+
         public String toString() {
             StringBuilder sb = new StringBuilder(String.format("%d", this.mId));
             for (float val : this.data.getValues()) {
@@ -0,0 +1,148 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cmu.sphinx.frontend.*;
+
+/**
+ * Content-addressed store of extracted features.
+ * The cepstral features of an audio file are computed once, written as a
+ * FeatureFile named after a hash of the audio and the acoustic model, and
+ * memory-mapped by every later request for the same audio.  Alignment,
+ * senone dumps and feature dumps all share the stored features.
+ *
+ * Loading is not zero-copy: callers take FloatData, which owns a float
+ * array, so each frame is copied out of the mapping once per load.  What
+ * the store saves is the front end run, not the copy.
+ *
+ * The store is off unless a directory is set with the feature.store system
+ * property.
+ */
+public class FeatureStore {
+    /** System property holding the store directory. */
+    public static final String PROP_DIR = "feature.store";
+
+    private static final String SUFFIX = ".feat";
+    // Stored features carry no mixture id.
+    private static final int NO_MIXTURE = -1;
+
+    private static long hits = 0;
+    private static long misses = 0;
+
+    public static boolean isEnabled() {
+        return getDirectory() != null;
+    }
+
+    public static File getDirectory() {
+        String path = System.getProperty(PROP_DIR);
+        return (path == null) ? null : new File(path);
+    }
+
+    /**
+     * Computes the store key of the features of an audio file.  The front
+     * end reads its parameters from the acoustic model, so the model is
+     * part of the key.
+     * @param audio buffered audio
+     * @param key models used for extraction
+     * @return hex encoded key
+     */
+    public static String getKey(AudioBuffer audio, ModelRegistry.ModelKey key)
+            throws Exception {
+        return new ContentDigest()
+            .update("features " + FeatureFile.VERSION)
+            .update(audio)
+            .updatePath(key.acousticModelPath)
+            .toHex();
+    }
+
+    /**
+     * Loads stored features.
+     * @param key store key
+     * @return features, or null if none are stored
+     */
+    public static List<FloatData> load(String key) {
+        File file = new File(getDirectory(), key + SUFFIX);
+        List<FloatData> features = null;
+        if (file.isFile()) {
+            try {
+                features = read(FeatureFile.open(file.getPath()));
+            } catch (IOException e) {
+                System.err.println("WARNING: dropping unreadable feature file " + file);
+                file.delete();
+            }
+        }
+
+        synchronized (FeatureStore.class) {
+            if (features == null) ++misses;
+            else ++hits;
+        }
+        return features;
+    }
+
+    /**
+     * Stores features.  Only features of evenly spaced frames starting at
+     * the beginning of the audio can be stored, since frame times are not
+     * written; others are silently skipped.
+     * @param key store key
+     * @param features features by frame
+     */
+    public static void store(String key, List<FloatData> features) throws IOException {
+        if (features.isEmpty()) return;
+        FloatData first = features.get(0);
+        int sampleRate = first.getSampleRate();
+        int dimension = first.getValues().length;
+        long samplesPerFrame = (long) sampleRate * FrameTable.FRAME_SHIFT / 1000;
+
+        for (int i = 0; i < features.size(); ++i) {
+            FloatData data = features.get(i);
+            if (data.getFirstSampleNumber() != i * samplesPerFrame
+                    || data.getValues().length != dimension)
+                return;
+        }
+
+        File dir = getDirectory();
+        dir.mkdirs();
+        File tmp = File.createTempFile(key + "-", ".tmp", dir);
+        try {
+            FeatureFile.Writer writer = new FeatureFile.Writer(tmp, dimension,
+                    FrameTable.FRAME_SHIFT, sampleRate);
+            for (FloatData data : features) writer.write(NO_MIXTURE, data.getValues());
+            writer.close();
+            Files.move(tmp.toPath(), new File(dir, key + SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Prints hit statistics to stderr, if the store is enabled.
+     */
+    public static synchronized void print() {
+        if (!isEnabled()) return;
+        System.err.println("Feature store hits: " + hits);
+        System.err.println("Feature store misses: " + misses);
+    }
+
+    private static List<FloatData> read(FeatureFile file) {
+        List<FloatData> features = new ArrayList<FloatData>(file.frameCount);
+        long samplesPerFrame = (long) file.sampleRate * file.frameShift / 1000;
+        for (int i = 0; i < file.frameCount; ++i) {
+            float[] values = new float[file.dimension];
+            file.copyFeatures(i, values);
+            features.add(new FloatData(values, file.sampleRate, i * samplesPerFrame));
+        }
+        return features;
+    }
+}
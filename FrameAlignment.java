@@ -20,6 +20,9 @@ import edu.cmu.sphinx.linguist.acoustic.tiedstate.*;
 import edu.cmu.sphinx.util.LogMath;
 import edu.cmu.sphinx.util.TimeFrame;
 
+/**
+ * View of one row of a FrameTable.
+ */
 public class FrameAlignment {
     public final long time;
     public final WordAlignment wordAlignment;
@@ -28,32 +31,28 @@ public class FrameAlignment {
     public final String triphone;
     public final Integer stateId;
     public final Integer mId;
-    public boolean isSpeech;
-    public FloatData features;
+    public final boolean isSpeech;
+    public final FloatData features;
 
-    public FrameAlignment(Token token, WordAlignment wa) {
-        this.time = token.getCollectTime();
-        this.wordAlignment = wa;
-        this.word = wa.word.toString();
-        this.logAcousticScore = token.getAcousticScore();
+    public FrameAlignment(FrameTable table, int row) {
+        this.time = table.getTime(row);
+        this.wordAlignment = table.getWord(row);
+        this.isSpeech = table.isSpeech(row);
+        this.features = table.getFeatures(row);
 
-        HMMState hmmState =
-            ((HMMSearchState) token.getSearchState()).getHMMState();
-        this.triphone = hmmState.getHMM().getUnit().toString();
-        this.stateId = hmmState.getState();
-        this.mId = (int) hmmState.getMixtureId();
-        this.isSpeech = true;
-    }
-
-    public FrameAlignment(long time) {
-        this.time = time;
-        this.wordAlignment = null;
-        this.word = null;
-        this.logAcousticScore = null;
-        this.triphone = null;
-        this.stateId = null;
-        this.mId = null;
-        this.isSpeech = false;
+        if (table.isAligned(row)) {
+            this.word = wordAlignment.word;
+            this.logAcousticScore = table.getScore(row);
+            this.triphone = table.getTriphone(row);
+            this.stateId = table.getStateId(row);
+            this.mId = table.getMixtureId(row);
+        } else {
+            this.word = null;
+            this.logAcousticScore = null;
+            this.triphone = null;
+            this.stateId = null;
+            this.mId = null;
+        }
     }
 
     public boolean isEmpty() {
@@ -61,6 +60,15 @@ public class FrameAlignment {
     }
 
     public String toString() {
+        return format(time, word, triphone, stateId, logAcousticScore, isSpeech);
+    }
+
+    /**
+     * Formats a frame as a line of text.  Fields that are null are left
+     * blank.
+     */
+    public static String format(long time, String word, String triphone,
+            Integer stateId, Float logAcousticScore, boolean isSpeech) {
         return String.format("%5.2f %15s %12s %4s %12s %s",
                 time / 1000.0,
                 (word == null) ? " " : word,
@@ -0,0 +1,429 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.cmu.sphinx.frontend.*;
+
+/**
+ * Columnar store of per-frame alignment data for one recording.
+ * Rows are indexed by frame number (collect time / FRAME_SHIFT), and each
+ * attribute of a frame is kept in its own primitive array.  Only rows that
+ * received features exist; see isPresent().
+ *
+ * Iterating the table yields FrameAlignment views, which are built on
+ * demand and are only meant for printing.
+ */
+public class FrameTable implements Iterable<FrameAlignment> {
+    /** Milliseconds between frames. */
+    public static final int FRAME_SHIFT = 10;
+
+    private final List<WordAlignment> words;
+    private final int numRows;
+    private final int dimension;
+    private final int sampleRate;
+
+    private final BitSet present;
+    private final BitSet classified;
+    private final BitSet speech;
+    private final int[] wordIndices;
+    private final int[] triphoneIds;
+    private final int[] stateIds;
+    private final int[] mixtureIds;
+    private final float[] scores;
+    private final float[] features;
+
+    /**
+     * Creates an empty table with room for every frame up to the last
+     * feature frame.
+     * @param words word alignments that word indices refer to
+     * @param features extracted features by frame
+     */
+    public FrameTable(List<WordAlignment> words, List<FloatData> features) {
+        this(words, rowsOf(features), dimensionOf(features), sampleRateOf(features));
+
+        for (FloatData data : features) {
+            int row = getRow(data.getCollectTime());
+            present.set(row);
+            System.arraycopy(data.getValues(), 0,
+                    this.features, row * dimension, dimension);
+        }
+    }
+
+    private FrameTable(List<WordAlignment> words, int numRows, int dimension,
+            int sampleRate) {
+        this.words = words;
+        this.numRows = numRows;
+        this.dimension = dimension;
+        this.sampleRate = sampleRate;
+
+        this.present = new BitSet(numRows);
+        this.classified = new BitSet(numRows);
+        this.speech = new BitSet(numRows);
+        this.wordIndices = filled(numRows, -1);
+        this.triphoneIds = filled(numRows, -1);
+        this.stateIds = filled(numRows, -1);
+        this.mixtureIds = filled(numRows, -1);
+        this.scores = new float[numRows];
+        this.features = new float[numRows * dimension];
+    }
+
+    /**
+     * Joins tables of consecutive pieces of a recording into one table.
+     * Rows of each piece are shifted by its start time, and word indices
+     * by the number of words in the pieces before it.
+     * @param words word alignments of the whole recording
+     * @param tables tables of the pieces, in time order
+     * @param starts start time of each piece in milliseconds
+     * @param wordOffsets index of the first word of each piece
+     * @return joined table
+     */
+    public static FrameTable join(List<WordAlignment> words, List<FrameTable> tables,
+            long[] starts, int[] wordOffsets) {
+        int numRows = 0;
+        int dimension = 0;
+        int sampleRate = 0;
+        for (int i = 0; i < tables.size(); ++i) {
+            FrameTable table = tables.get(i);
+            if (table.isEmpty()) continue;
+            numRows = Math.max(numRows, getRow(starts[i]) + table.numRows);
+            dimension = table.dimension;
+            sampleRate = table.sampleRate;
+        }
+
+        FrameTable joined = new FrameTable(words, numRows, dimension, sampleRate);
+        for (int i = 0; i < tables.size(); ++i) {
+            FrameTable table = tables.get(i);
+            int offset = getRow(starts[i]);
+            for (int row = table.nextRow(0); row >= 0; row = table.nextRow(row + 1)) {
+                int dest = offset + row;
+                joined.present.set(dest);
+                joined.classified.set(dest, table.classified.get(row));
+                joined.speech.set(dest, table.speech.get(row));
+                System.arraycopy(table.features, row * dimension,
+                        joined.features, dest * dimension, dimension);
+
+                if (table.wordIndices[row] < 0) {
+                    joined.clearAlignment(dest);
+                } else {
+                    joined.wordIndices[dest] = table.wordIndices[row] + wordOffsets[i];
+                    joined.triphoneIds[dest] = table.triphoneIds[row];
+                    joined.stateIds[dest] = table.stateIds[row];
+                    joined.mixtureIds[dest] = table.mixtureIds[row];
+                    joined.scores[dest] = table.scores[row];
+                }
+            }
+        }
+        return joined;
+    }
+
+    /**
+     * Writes every column of the table.  Triphones are written by name,
+     * since UnitTable ids are only valid within one process.
+     * @param out output
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(numRows);
+        out.writeInt(dimension);
+        out.writeInt(sampleRate);
+        writeBits(out, present);
+        writeBits(out, classified);
+        writeBits(out, speech);
+
+        int[] localIds = new int[UnitTable.size()];
+        Arrays.fill(localIds, -1);
+        int numTriphones = 0;
+        for (int row = 0; row < numRows; ++row) {
+            int id = triphoneIds[row];
+            if (id >= 0 && localIds[id] < 0) localIds[id] = numTriphones++;
+        }
+        String[] names = new String[numTriphones];
+        for (int id = 0; id < localIds.length; ++id) {
+            if (localIds[id] >= 0) names[localIds[id]] = UnitTable.getName(id);
+        }
+        out.writeInt(numTriphones);
+        for (String name : names) out.writeUTF(name);
+
+        for (int row = 0; row < numRows; ++row) {
+            out.writeInt(wordIndices[row]);
+            out.writeInt((triphoneIds[row] < 0) ? -1 : localIds[triphoneIds[row]]);
+            out.writeInt(stateIds[row]);
+            out.writeInt(mixtureIds[row]);
+            out.writeFloat(scores[row]);
+        }
+        for (float value : features) out.writeFloat(value);
+    }
+
+    /**
+     * Reads a table written with write().
+     * @param in input
+     * @param words word alignments that word indices refer to
+     * @return frame table
+     */
+    public static FrameTable read(DataInput in, List<WordAlignment> words)
+            throws IOException {
+        int numRows = in.readInt();
+        int dimension = in.readInt();
+        int sampleRate = in.readInt();
+        FrameTable table = new FrameTable(words, numRows, dimension, sampleRate);
+        table.present.or(readBits(in));
+        table.classified.or(readBits(in));
+        table.speech.or(readBits(in));
+
+        int[] unitIds = new int[in.readInt()];
+        for (int i = 0; i < unitIds.length; ++i) {
+            unitIds[i] = UnitTable.getId(in.readUTF());
+        }
+
+        for (int row = 0; row < numRows; ++row) {
+            table.wordIndices[row] = in.readInt();
+            int triphone = in.readInt();
+            table.triphoneIds[row] = (triphone < 0) ? -1 : unitIds[triphone];
+            table.stateIds[row] = in.readInt();
+            table.mixtureIds[row] = in.readInt();
+            table.scores[row] = in.readFloat();
+        }
+        for (int i = 0; i < table.features.length; ++i) {
+            table.features[i] = in.readFloat();
+        }
+        return table;
+    }
+
+    /**
+     * Gets the row of a collect time.
+     * @param time collect time in milliseconds
+     * @return row index
+     */
+    public static int getRow(long time) {
+        return (int) (time / FRAME_SHIFT);
+    }
+
+    public int getRowCount() {
+        return numRows;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public boolean isPresent(int row) {
+        return row >= 0 && row < numRows && present.get(row);
+    }
+
+    /**
+     * Gets the next present row at or after the given row.
+     * @param row starting row
+     * @return row index, or -1 if there are none
+     */
+    public int nextRow(int row) {
+        int next = present.nextSetBit(row);
+        return (next < 0 || next >= numRows) ? -1 : next;
+    }
+
+    /**
+     * Gets the collect time of the last present row.
+     * @return time in milliseconds, or 0 if the table is empty
+     */
+    public long getLastTime() {
+        int last = present.length() - 1;
+        return (last < 0) ? 0 : getTime(last);
+    }
+
+    public boolean isEmpty() {
+        return present.isEmpty();
+    }
+
+    public long getTime(int row) {
+        return (long) row * FRAME_SHIFT;
+    }
+
+    /**
+     * Records the speech classification of a frame.
+     * Frames that were never classified count as non-speech and carry no
+     * alignment.
+     */
+    public void setSpeech(long time, boolean isSpeech) {
+        int row = getRow(time);
+        if (row >= numRows) return;
+        classified.set(row);
+        speech.set(row, isSpeech);
+    }
+
+    /**
+     * Records the alignment of a frame to a word.
+     * @param time collect time
+     * @param wordIndex index of word in the word list
+     * @param triphoneId id of triphone in the UnitTable
+     * @param stateId HMM state
+     * @param mixtureId senone id
+     * @param score log acoustic score
+     */
+    public void setAlignment(long time, int wordIndex, int triphoneId,
+            int stateId, int mixtureId, float score) {
+        int row = getRow(time);
+        if (row >= numRows) return;
+        wordIndices[row] = wordIndex;
+        triphoneIds[row] = triphoneId;
+        stateIds[row] = stateId;
+        mixtureIds[row] = mixtureId;
+        scores[row] = score;
+    }
+
+    /**
+     * Drops alignments of frames that were never speech classified, since
+     * those frames carry no alignment.
+     */
+    public void dropUnclassified() {
+        for (int row = 0; row < numRows; ++row) {
+            if (!classified.get(row)) clearAlignment(row);
+        }
+    }
+
+    public boolean isSpeech(int row) {
+        return speech.get(row);
+    }
+
+    public boolean isAligned(int row) {
+        return wordIndices[row] >= 0;
+    }
+
+    /**
+     * Whether a frame is non-speech and has no corresponding word.
+     */
+    public boolean isEmpty(int row) {
+        return !speech.get(row) && wordIndices[row] < 0;
+    }
+
+    public int getWordIndex(int row) {
+        return wordIndices[row];
+    }
+
+    public WordAlignment getWord(int row) {
+        int index = wordIndices[row];
+        return (index < 0) ? null : words.get(index);
+    }
+
+    public int getTriphoneId(int row) {
+        return triphoneIds[row];
+    }
+
+    public String getTriphone(int row) {
+        return UnitTable.getName(triphoneIds[row]);
+    }
+
+    public int getStateId(int row) {
+        return stateIds[row];
+    }
+
+    public int getMixtureId(int row) {
+        return mixtureIds[row];
+    }
+
+    public float getScore(int row) {
+        return scores[row];
+    }
+
+    /**
+     * Copies the features of a frame.
+     * @param row row index
+     * @param dest array of at least getDimension() floats
+     */
+    public void copyFeatures(int row, float[] dest) {
+        System.arraycopy(features, row * dimension, dest, 0, dimension);
+    }
+
+    /**
+     * Gets the features of a frame as a new FloatData.
+     * @param row row index
+     * @return feature data, or null if the row has no features
+     */
+    public FloatData getFeatures(int row) {
+        if (!isPresent(row)) return null;
+        float[] values = new float[dimension];
+        copyFeatures(row, values);
+        return new FloatData(values, sampleRate,
+                getTime(row) * sampleRate / 1000);
+    }
+
+    /**
+     * Builds a FrameAlignment view of a row.
+     * @param row row index
+     * @return frame alignment
+     */
+    public FrameAlignment get(int row) {
+        return new FrameAlignment(this, row);
+    }
+
+    public Iterator<FrameAlignment> iterator() {
+        return new Iterator<FrameAlignment>() {
+            private int next = nextRow(0);
+
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            public FrameAlignment next() {
+                if (next < 0) throw new NoSuchElementException();
+                FrameAlignment frame = get(next);
+                next = nextRow(next + 1);
+                return frame;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void clearAlignment(int row) {
+        wordIndices[row] = -1;
+        triphoneIds[row] = -1;
+        stateIds[row] = -1;
+        mixtureIds[row] = -1;
+        scores[row] = 0;
+    }
+
+    private static void writeBits(DataOutput out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) out.writeLong(word);
+    }
+
+    private static BitSet readBits(DataInput in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; ++i) words[i] = in.readLong();
+        return BitSet.valueOf(words);
+    }
+
+    private static int rowsOf(List<FloatData> features) {
+        long lastTime = -1;
+        for (FloatData data : features) {
+            lastTime = Math.max(lastTime, data.getCollectTime());
+        }
+        return (lastTime < 0) ? 0 : getRow(lastTime) + 1;
+    }
+
+    private static int dimensionOf(List<FloatData> features) {
+        return features.isEmpty() ? 0
+            : features.get(features.size() - 1).getValues().length;
+    }
+
+    private static int sampleRateOf(List<FloatData> features) {
+        return features.isEmpty() ? 0
+            : features.get(features.size() - 1).getSampleRate();
+    }
+
+    private static int[] filled(int length, int value) {
+        int[] arr = new int[length];
+        Arrays.fill(arr, value);
+        return arr;
+    }
+}
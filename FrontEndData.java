@@ -0,0 +1,19 @@
+import java.util.List;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.*;
+
+/**
+ * Speech classification and feature data extracted from a single front end
+ * pass over an audio file.
+ */
+public class FrontEndData {
+    public final List<SpeechClassifiedData> speechData;
+    public final List<FloatData> features;
+
+    public FrontEndData(List<SpeechClassifiedData> speechData,
+            List<FloatData> features) {
+        this.speechData = speechData;
+        this.features = features;
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.cmu.sphinx.util.TimeFrame;
+
+/**
+ * Static index over a set of time frames that answers whether any of them
+ * overlaps a query range in O(log n).
+ * Intervals are sorted by start time and paired with the running maximum
+ * of their end times, so every interval starting at or before the end of
+ * the query can be checked with a single comparison.
+ */
+public class IntervalIndex {
+    private final long[] starts;
+    private final long[] maxEnds;
+
+    public IntervalIndex(List<TimeFrame> timeFrames) {
+        List<TimeFrame> sorted = new ArrayList<TimeFrame>();
+        for (TimeFrame timeFrame : timeFrames) {
+            if (timeFrame != null) sorted.add(timeFrame);
+        }
+        Collections.sort(sorted, new Comparator<TimeFrame>() {
+            public int compare(TimeFrame a, TimeFrame b) {
+                return Long.compare(a.getStart(), b.getStart());
+            }
+        });
+
+        this.starts = new long[sorted.size()];
+        this.maxEnds = new long[sorted.size()];
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; i < sorted.size(); ++i) {
+            starts[i] = sorted.get(i).getStart();
+            maxEnd = Math.max(maxEnd, sorted.get(i).getEnd());
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    /**
+     * Checks whether any interval overlaps [start, end], inclusive.
+     * @param start start of query range
+     * @param end end of query range
+     * @return whether an overlapping interval exists
+     */
+    public boolean overlaps(long start, long end) {
+        // Number of intervals starting at or before end.
+        int count = upperBound(starts, end);
+        return count > 0 && maxEnds[count - 1] >= start;
+    }
+
+    public boolean overlaps(TimeFrame timeFrame) {
+        return overlaps(timeFrame.getStart(), timeFrame.getEnd());
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    private static int upperBound(long[] arr, long key) {
+        int lo = 0;
+        int hi = arr.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (arr[mid] <= key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
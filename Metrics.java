@@ -0,0 +1,209 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-stage timing of the speech tools.
+ * Each stage (front end, speech classification, alignment search, frame
+ * map construction, segmentation, decoding) keeps a latency histogram,
+ * the number of frames it processed and the bytes its thread allocated.
+ * Together with the amount of audio seen, this gives the real-time factor
+ * and throughput of every stage.
+ *
+ * Stages are timed on the thread doing the work, so counts stay correct
+ * when a batch runs on several workers.  The totals are written as JSON
+ * to the file named by the metrics.output system property.
+ */
+public class Metrics {
+    /** System property holding the path of the JSON output file. */
+    public static final String PROP_OUTPUT = "metrics.output";
+
+    public static final String FRONT_END = "frontend";
+    public static final String CLASSIFY = "classify";
+    public static final String SEARCH = "search";
+    public static final String FRAMES = "frames";
+    public static final String SEGMENT = "segment";
+    public static final String DECODE = "decode";
+
+    // Bucket i counts latencies below 2^i microseconds.
+    private static final int BUCKETS = 40;
+
+    private static final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+    private static long audioTime = 0;
+    private static final long startTime = System.nanoTime();
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Starts timing a stage on the calling thread.
+     * @param stage stage name
+     * @return timer to stop when the stage is done
+     */
+    public static Timer start(String stage) {
+        return new Timer(stage);
+    }
+
+    /**
+     * Counts audio handed to the tools, for real-time factors.
+     * @param duration audio length in milliseconds
+     */
+    public static synchronized void addAudio(long duration) {
+        audioTime += duration;
+    }
+
+    /**
+     * Writes the collected metrics as JSON, if an output file is set with
+     * the metrics.output system property.
+     */
+    public static void print() {
+        String path = System.getProperty(PROP_OUTPUT);
+        if (path == null) return;
+        try {
+            PrintStream out = new PrintStream(new FileOutputStream(new File(path)), false, "UTF-8");
+            try {
+                write(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("WARNING: could not write metrics to " + path);
+        }
+    }
+
+    public static synchronized void write(PrintStream out) {
+        long wallTime = (System.nanoTime() - startTime) / 1000000;
+        out.println("{");
+        out.println("  \"audioMs\": " + audioTime + ",");
+        out.println("  \"wallMs\": " + wallTime + ",");
+        out.printf(Locale.ROOT, "  \"rtf\": %.4f,\n", getRealTimeFactor(wallTime * 1000000));
+        out.println("  \"stages\": {");
+        int n = 0;
+        for (Map.Entry<String, Stage> e : stages.entrySet()) {
+            out.print("    \"" + e.getKey() + "\": ");
+            e.getValue().write(out, "    ");
+            out.println((++n < stages.size()) ? "," : "");
+        }
+        out.println("  }");
+        out.println("}");
+    }
+
+    private static double getRealTimeFactor(long nanos) {
+        return (audioTime == 0) ? 0.0 : nanos / (audioTime * 1e6);
+    }
+
+    private static long getAllocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static synchronized void record(String name, long nanos, long frames, long bytes) {
+        Stage stage = stages.get(name);
+        if (stage == null) {
+            stage = new Stage();
+            stages.put(name, stage);
+        }
+        stage.add(nanos, frames, bytes);
+    }
+
+    /**
+     * Running timer of one stage.
+     */
+    public static class Timer {
+        private final String stage;
+        private final long start;
+        private final long startBytes;
+
+        private Timer(String stage) {
+            this.stage = stage;
+            this.startBytes = getAllocatedBytes();
+            this.start = System.nanoTime();
+        }
+
+        public void stop() {
+            stop(0);
+        }
+
+        /**
+         * Stops the timer and records the stage.
+         * @param frames number of frames the stage processed
+         */
+        public void stop(long frames) {
+            long nanos = System.nanoTime() - start;
+            record(stage, nanos, frames, Math.max(0, getAllocatedBytes() - startBytes));
+        }
+    }
+
+    /**
+     * Totals of one stage.
+     */
+    private static class Stage {
+        final long[] histogram = new long[BUCKETS];
+        long count = 0;
+        long nanos = 0;
+        long maxNanos = 0;
+        long frames = 0;
+        long bytes = 0;
+
+        void add(long nanos, long frames, long bytes) {
+            long micros = nanos / 1000;
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            ++histogram[Math.min(bucket, BUCKETS - 1)];
+            ++count;
+            this.nanos += nanos;
+            this.maxNanos = Math.max(this.maxNanos, nanos);
+            this.frames += frames;
+            this.bytes += bytes;
+        }
+
+        /**
+         * Gets an upper bound of a latency percentile.
+         * @return latency in milliseconds
+         */
+        double getPercentile(double p) {
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0) return Math.min((1L << i) * 1000, maxNanos) / 1e6;
+            }
+            return maxNanos / 1e6;
+        }
+
+        void write(PrintStream out, String indent) {
+            out.println("{");
+            out.println(indent + "  \"count\": " + count + ",");
+            out.printf(Locale.ROOT, indent + "  \"totalMs\": %.3f,\n", nanos / 1e6);
+            out.printf(Locale.ROOT, indent + "  \"meanMs\": %.3f,\n", (count == 0) ? 0.0 : nanos / 1e6 / count);
+            out.printf(Locale.ROOT, indent + "  \"p50Ms\": %.3f,\n", getPercentile(0.5));
+            out.printf(Locale.ROOT, indent + "  \"p90Ms\": %.3f,\n", getPercentile(0.9));
+            out.printf(Locale.ROOT, indent + "  \"p99Ms\": %.3f,\n", getPercentile(0.99));
+            out.printf(Locale.ROOT, indent + "  \"maxMs\": %.3f,\n", maxNanos / 1e6);
+            out.printf(Locale.ROOT, indent + "  \"rtf\": %.4f,\n", getRealTimeFactor(nanos));
+            out.println(indent + "  \"frames\": " + frames + ",");
+            out.printf(Locale.ROOT, indent + "  \"framesPerSecond\": %.1f,\n",
+                    (nanos == 0) ? 0.0 : frames * 1e9 / nanos);
+            out.println(indent + "  \"allocatedBytes\": " + bytes + ",");
+
+            // Buckets as [upper bound in ms, count], empty ones left out.
+            out.print(indent + "  \"histogram\": [");
+            boolean first = true;
+            for (int i = 0; i < BUCKETS; ++i) {
+                if (histogram[i] == 0) continue;
+                out.print(first ? "" : ", ");
+                out.printf(Locale.ROOT, "[%.3f, %d]", (1L << i) / 1000.0, histogram[i]);
+                first = false;
+            }
+            out.println("]");
+            out.print(indent + "}");
+        }
+    }
+}
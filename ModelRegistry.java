@@ -0,0 +1,122 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of loaded models.  Each combination of acoustic model,
+ * dictionary, G2P model and transform is loaded into an AlignmentSession,
+ * and sessions are handed back out to later callers that ask for the same
+ * combination instead of being loaded again.
+ * Sessions keep front end and search state, so a session is only ever
+ * checked out to one caller at a time.
+ */
+public class ModelRegistry {
+    private static final Map<ModelKey, Deque<AlignmentSession>> idle =
+            new HashMap<ModelKey, Deque<AlignmentSession>>();
+    private static long hits = 0;
+    private static long misses = 0;
+
+    /**
+     * Checks out a session for a model combination, loading a new one if
+     * none is idle.  The session must be given back with release() (or
+     * AlignmentSession.close()) once the caller is done with it.
+     * @param key model combination
+     * @return alignment session
+     */
+    public static AlignmentSession acquire(ModelKey key) throws Exception {
+        synchronized (ModelRegistry.class) {
+            Deque<AlignmentSession> sessions = idle.get(key);
+            if (sessions != null && !sessions.isEmpty()) {
+                ++hits;
+                return sessions.pop();
+            }
+            ++misses;
+        }
+
+        // Load outside the lock so other keys are not held up.
+        return new AlignmentSession(key);
+    }
+
+    /**
+     * Returns a session to the registry so it can be handed out again.
+     * @param session alignment session
+     */
+    public static synchronized void release(AlignmentSession session) {
+        Deque<AlignmentSession> sessions = idle.get(session.key);
+        if (sessions == null) {
+            sessions = new ArrayDeque<AlignmentSession>();
+            idle.put(session.key, sessions);
+        }
+        sessions.push(session);
+    }
+
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Drops all idle sessions and resets the counters.
+     */
+    public static synchronized void clear() {
+        idle.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    public static synchronized void print() {
+        System.err.println("Registry hits: " + hits);
+        System.err.println("Registry misses: " + misses);
+    }
+
+    /**
+     * Identifies a combination of model files.
+     */
+    public static class ModelKey {
+        public final String acousticModelPath;
+        public final String dictionaryPath;
+        public final String g2pPath;
+        public final String transformPath;
+
+        public ModelKey(String acousticModelPath, String dictionaryPath,
+                String g2pPath, String transformPath) {
+            this.acousticModelPath = acousticModelPath;
+            this.dictionaryPath = dictionaryPath;
+            this.g2pPath = g2pPath;
+            this.transformPath = transformPath;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ModelKey)) return false;
+            ModelKey other = (ModelKey) o;
+            return equal(acousticModelPath, other.acousticModelPath)
+                && equal(dictionaryPath, other.dictionaryPath)
+                && equal(g2pPath, other.g2pPath)
+                && equal(transformPath, other.transformPath);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 17;
+            for (String s : new String[] { acousticModelPath, dictionaryPath,
+                    g2pPath, transformPath }) {
+                hash = 31 * hash + ((s == null) ? 0 : s.hashCode());
+            }
+            return hash;
+        }
+
+        public String toString() {
+            return String.format("%s %s %s %s", acousticModelPath,
+                    dictionaryPath, g2pPath, transformPath);
+        }
+
+        private static boolean equal(String a, String b) {
+            return (a == null) ? b == null : a.equals(b);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import edu.cmu.sphinx.api.*;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.dictionary.*;
+import edu.cmu.sphinx.util.BatchFile;
+
+/**
+ * Pronunciation snapshot of the words of a batch.
+ * Most of the time taken to start an AlignmentSession goes into parsing
+ * the full text dictionary and deserializing the G2P model.  A snapshot
+ * is a dictionary holding only the words a batch needs, with the G2P
+ * pronunciations of words missing from the full dictionary already
+ * generated, so sessions built on it parse a few thousand lines and never
+ * load the G2P model.
+ *
+ * Snapshots are used by setting the model.snapshot system property to
+ * the snapshot file.  They grow as batches need new words: update() only
+ * looks up words the snapshot does not have yet, so each out of
+ * vocabulary pronunciation is generated once and reused by later runs.
+ * Words with no pronunciation and fillers are listed in a .skip file next
+ * to the snapshot, so they are not looked up again either.  Transcripts
+ * with words outside the snapshot are aligned with the full models.
+ */
+public class ModelSnapshot {
+    /** System property holding the path of the snapshot dictionary. */
+    public static final String PROP_PATH = "model.snapshot";
+
+    private static Set<String> vocabulary = null;
+
+    public static void main(String args[]) throws Exception {
+        Context.setCustomConfig("/audio/tools/transcription/jar/config.xml");
+
+        if (args.length < 2) {
+            System.err.println("Usage: java [-Dbatch.workers=N] ModelSnapshot <batch> <snapshot>");
+            System.exit(-1);
+        }
+
+        update(BatchFile.getLines(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Adds the words of a batch to the snapshot set with the
+     * model.snapshot system property, if any.
+     * @param lines batch lines
+     */
+    public static void update(List<String> lines) throws Exception {
+        if (isEnabled()) update(lines, new File(getPath()));
+    }
+
+    /**
+     * Adds the words of a batch to a snapshot.  Transcripts are normalized
+     * in parallel, and the full dictionary and G2P model are only loaded
+     * if some words are new.  Words left out of the snapshot, because they
+     * have no pronunciation or are fillers, are kept in a side file so
+     * later runs do not look them up again.
+     * @param lines batch lines
+     * @param file snapshot file, created if missing
+     */
+    public static synchronized void update(List<String> lines, File file) throws Exception {
+        Map<String, List<String>> entries = file.isFile()
+            ? readEntries(file) : new TreeMap<String, List<String>>();
+        File skipFile = getSkipFile(file);
+        Set<String> skipped = skipFile.isFile()
+            ? new TreeSet<String>(readLines(skipFile)) : new TreeSet<String>();
+
+        Set<String> words = new TreeSet<String>();
+        for (String word : TranscriptNormalizer.getVocabulary(lines)) {
+            if (!entries.containsKey(word) && !skipped.contains(word)) words.add(word);
+        }
+
+        int added = 0;
+        int missing = 0;
+        if (!words.isEmpty()) {
+            Dictionary dictionary = loadDictionary(SpeechTools.getFullModelKey());
+            for (String word : words) {
+                Word w = dictionary.getWord(word);
+                if (w == null || w.getPronunciations().length == 0) {
+                    ++missing;
+                    skipped.add(word);
+                } else if (w.isFiller()) {
+                    skipped.add(word);
+                } else {
+                    entries.put(word, getPronunciations(w));
+                    ++added;
+                }
+            }
+            write(toLines(entries), file);
+            write(new ArrayList<String>(skipped), skipFile);
+        }
+
+        System.err.println("Snapshot " + file + ": " + added
+                + " new words, " + entries.size() + " total");
+        if (missing > 0) System.err.println("WARNING: " + missing + " words have no pronunciation");
+        vocabulary = null;
+    }
+
+    public static boolean isEnabled() {
+        return getPath() != null;
+    }
+
+    public static String getPath() {
+        return System.getProperty(PROP_PATH);
+    }
+
+    /**
+     * Checks whether the snapshot has a pronunciation for every word.
+     * @param words transcript words
+     * @return true if the snapshot covers all of them
+     */
+    public static synchronized boolean covers(List<String> words) throws IOException {
+        if (vocabulary == null) vocabulary = readVocabulary(new File(getPath()));
+        for (String word : words) {
+            if (!vocabulary.contains(word.toLowerCase())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Loads the full dictionary with G2P enabled, the same way the
+     * SpeechAligner does.
+     */
+    private static Dictionary loadDictionary(ModelRegistry.ModelKey key) throws Exception {
+        Configuration config = new Configuration();
+        config.setAcousticModelPath(key.acousticModelPath);
+        config.setDictionaryPath(key.dictionaryPath);
+        Context context = new Context(config);
+        if (key.g2pPath != null) {
+            context.setLocalProperty("dictionary->g2pModelPath", key.g2pPath);
+            context.setLocalProperty("dictionary->g2pMaxPron", "2");
+        }
+
+        Dictionary dictionary = context.getConfigurationManager().lookup("dictionary");
+        dictionary.allocate();
+        return dictionary;
+    }
+
+    /**
+     * Gets the pronunciations of a dictionary word as phone strings.
+     */
+    private static List<String> getPronunciations(Word w) {
+        List<String> pronunciations = new ArrayList<String>();
+        for (Pronunciation pronunciation : w.getPronunciations()) {
+            StringBuilder sb = new StringBuilder();
+            for (Unit unit : pronunciation.getUnits()) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(unit.getName());
+            }
+            pronunciations.add(sb.toString());
+        }
+        return pronunciations;
+    }
+
+    /**
+     * Formats pronunciations as lines of the text dictionary.
+     * Alternate pronunciations are written as word(2), word(3) and so on.
+     */
+    private static List<String> toLines(Map<String, List<String>> entries) {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, List<String>> e : entries.entrySet()) {
+            List<String> pronunciations = e.getValue();
+            for (int i = 0; i < pronunciations.size(); ++i) {
+                String word = (i == 0) ? e.getKey() : e.getKey() + "(" + (i + 1) + ")";
+                lines.add(word + " " + pronunciations.get(i));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Replaces a file with the given lines.  The file is written next to
+     * its destination and moved into place, so readers never see it half
+     * written.
+     */
+    private static void write(List<String> lines, File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName() + "-", ".tmp", dir);
+        try {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                        new FileOutputStream(tmp), "UTF-8"));
+            try {
+                for (String line : lines) out.println(line);
+            } finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Gets the side file listing the words left out of a snapshot.
+     */
+    private static File getSkipFile(File file) {
+        return new File(file.getPath() + ".skip");
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) lines.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        return lines;
+    }
+
+    /**
+     * Reads a snapshot back into pronunciations by word.
+     */
+    private static Map<String, List<String>> readEntries(File file) throws IOException {
+        Map<String, List<String>> entries = new TreeMap<String, List<String>>();
+        for (String line : readLines(file)) {
+            int end = line.indexOf(' ');
+            String word = (end < 0) ? line : line.substring(0, end);
+            String phones = (end < 0) ? "" : line.substring(end + 1).trim();
+            int paren = word.indexOf('(');
+            if (paren > 0) word = word.substring(0, paren);
+
+            List<String> pronunciations = entries.get(word);
+            if (pronunciations == null) {
+                pronunciations = new ArrayList<String>();
+                entries.put(word, pronunciations);
+            }
+            pronunciations.add(phones);
+        }
+        return entries;
+    }
+
+    private static Set<String> readVocabulary(File file) throws IOException {
+        Set<String> words = new HashSet<String>();
+        for (String word : readEntries(file).keySet()) words.add(word.toLowerCase());
+        return words;
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import edu.cmu.sphinx.api.*;
+
+/**
+ * Pool of loaded StreamSpeechRecognizers.  Loading a recognizer reads the
+ * acoustic model, dictionary and language model, so recognizers are kept
+ * warm between utterances and only reloaded when they need a different
+ * transform.
+ */
+public class RecognizerPool {
+    private static final String ACOUSTIC_MODEL_PATH =
+            "/audio/models/transcription/acoustic/models/en-us";
+    private static final String LANGUAGE_MODEL_PATH =
+            "/audio/models/transcription/language/models/en-us.lm";
+    private static final String DICTIONARY_PATH =
+            "/audio/models/transcription/dictionary/cmudict-en-us.dict";
+
+    // Idle recognizers with the transform applied to each.  Checked out
+    // recognizers are not referenced, so one that is never given back is
+    // simply collected.
+    private static final Deque<Idle> idle = new ArrayDeque<Idle>();
+    private static long loads = 0;
+
+    /**
+     * Loads recognizers until at least count of them are idle.
+     * @param count number of recognizers
+     * @param transformPath transform to apply, or null
+     */
+    public static void warm(int count, String transformPath) throws Exception {
+        while (true) {
+            synchronized (RecognizerPool.class) {
+                if (idle.size() >= count) return;
+            }
+            release(load(transformPath), transformPath);
+        }
+    }
+
+    /**
+     * Checks out a recognizer with the given transform applied.  The
+     * recognizer must be given back with release() once it has finished
+     * cleanly; one that failed is just dropped.
+     * @param transformPath transform to apply, or null
+     * @return recognizer
+     */
+    public static StreamSpeechRecognizer acquire(String transformPath) throws Exception {
+        Idle entry = null;
+        synchronized (RecognizerPool.class) {
+            // Prefer a recognizer that already has the right transform.
+            for (Idle e : idle) {
+                if (equal(e.transformPath, transformPath)) {
+                    entry = e;
+                    break;
+                }
+            }
+            if (entry == null) entry = idle.poll();
+            else idle.remove(entry);
+        }
+
+        if (entry == null) return load(transformPath);
+        if (equal(entry.transformPath, transformPath)) return entry.recognizer;
+
+        // A transform is applied to the model in place, so one can only be
+        // added to an untransformed recognizer.
+        if (entry.transformPath == null) {
+            entry.recognizer.loadTransform(transformPath, 1);
+            return entry.recognizer;
+        }
+        return load(transformPath);
+    }
+
+    /**
+     * Returns a recognizer to the pool.
+     * @param recognizer recognizer from acquire()
+     * @param transformPath transform it was acquired with
+     */
+    public static synchronized void release(StreamSpeechRecognizer recognizer,
+            String transformPath) {
+        idle.push(new Idle(recognizer, transformPath));
+    }
+
+    public static synchronized long getLoads() {
+        return loads;
+    }
+
+    private static StreamSpeechRecognizer load(String transformPath) throws Exception {
+        Configuration configuration = new Configuration();
+        configuration.setAcousticModelPath(ACOUSTIC_MODEL_PATH);
+        configuration.setLanguageModelPath(LANGUAGE_MODEL_PATH);
+        configuration.setDictionaryPath(DICTIONARY_PATH);
+
+        StreamSpeechRecognizer recognizer = new StreamSpeechRecognizer(configuration);
+        if (transformPath != null) recognizer.loadTransform(transformPath, 1);
+
+        synchronized (RecognizerPool.class) {
+            ++loads;
+        }
+        return recognizer;
+    }
+
+    private static boolean equal(String a, String b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+    private static class Idle {
+        final StreamSpeechRecognizer recognizer;
+        final String transformPath;
+
+        Idle(StreamSpeechRecognizer recognizer, String transformPath) {
+            this.recognizer = recognizer;
+            this.transformPath = transformPath;
+        }
+    }
+}
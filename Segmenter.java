@@ -18,6 +18,12 @@ import edu.cmu.sphinx.util.TimeFrame;
 import edu.cmu.sphinx.util.BatchFile;
 
 public class Segmenter {
+    /**
+     * System property selecting the segmenter: "true" segments with the
+     * StreamingSegmenter, "check" runs both and warns where they differ.
+     */
+    public static final String PROP_STREAMING = "segment.streaming";
+
     public static void main(String args[]) throws Exception {
         Context.setCustomConfig("/audio/tools/transcription/jar/config.xml");
 
@@ -25,19 +31,58 @@ public class Segmenter {
         if (args.length > 0) {
             batchPath = args[0];
         } else {
-            System.err.println("Usage: java Segmenter <batch>");
+            System.err.println("Usage: java [-Dbatch.workers=N] [-Dmetrics.output=<file>] [-Dalignment.cache=<dir>] [-Dmodel.snapshot=<file>] [-Dsegment.streaming=true|check] Segmenter <batch>");
             System.exit(-1);
         }
 
-        for (String line : BatchFile.getLines(batchPath)) {
-            System.out.println(BatchFile.getFilename(line));
-            TranscriptAlignment t = SpeechTools.getTranscriptAlignment(line);
-            for (Segment s : t.getSegments()) System.out.println(s);
-            System.out.println();
+        List<String> lines = BatchFile.getLines(batchPath);
+        ModelSnapshot.update(lines);
+
+        final String streaming = System.getProperty(PROP_STREAMING, "false");
+        BatchExecutor.run(lines,
+            new BatchExecutor.Task<List<Segment>>() {
+                public List<Segment> process(String line) throws Exception {
+                    TranscriptAlignment t = SpeechTools.getTranscriptAlignment(line);
+                    if (streaming.equals("true")) {
+                        return StreamingSegmenter.getSegments(t);
+                    }
+
+                    List<Segment> segments = t.getSegments();
+                    if (streaming.equals("check") && !sameSegments(segments,
+                                StreamingSegmenter.getSegments(t))) {
+                        System.err.println("WARNING: streaming segments differ: "
+                                + BatchFile.getFilename(line));
+                    }
+                    return segments;
+                }
+            },
+            new BatchExecutor.Sink<List<Segment>>() {
+                public void accept(String line, List<Segment> segments) {
+                    System.out.println(BatchFile.getFilename(line));
+                    for (Segment s : segments) System.out.println(s);
+                    System.out.println();
+                }
+            });
 
-            t = null;
-            System.gc();
+        AlignmentCache.print();
+        FeatureStore.print();
+        Metrics.print();
+    }
+
+    private static boolean sameSegments(List<Segment> a, List<Segment> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); ++i) {
+            Segment x = a.get(i);
+            Segment y = b.get(i);
+            if (!sameTime(x.left, y.left) || !sameTime(x.time, y.time)
+                    || !sameTime(x.right, y.right) || !x.words.equals(y.words))
+                return false;
         }
+        return true;
+    }
 
+    private static boolean sameTime(TimeFrame a, TimeFrame b) {
+        if (a == null || b == null) return a == b;
+        return a.getStart() == b.getStart() && a.getEnd() == b.getEnd();
     }
 }
@@ -1,50 +1,225 @@
-import java.io.File;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
-import java.util.Map;
-import java.util.LinkedHashMap;
-
-import edu.cmu.sphinx.decoder.search.Token;
-import edu.cmu.sphinx.alignment.LongTextAligner;
-import edu.cmu.sphinx.alignment.USEnglishTokenizer;
-import edu.cmu.sphinx.api.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import edu.cmu.sphinx.frontend.*;
-import edu.cmu.sphinx.result.WordResult;
-import edu.cmu.sphinx.linguist.HMMSearchState;
 import edu.cmu.sphinx.linguist.acoustic.tiedstate.*;
-import edu.cmu.sphinx.util.LogMath;
 
+/**
+ * Acoustic scores of every senone for every frame of an audio file.
+ * Scores are kept frame-major in primitive blocks of BLOCK_FRAMES frames,
+ * so a frame's scores are contiguous and growing the dump never copies
+ * earlier frames.
+ *
+ * With more than one thread, the senone pool of each frame is split across
+ * a fork-join pool.  Frames are still scored one after another, as in the
+ * decoder's threaded scorer, because senones cache the last frame they
+ * scored and share Gaussian sets.
+ */
 public class SenoneDump {
-    // Map of frames to senones to scores.
-    private Map<Long, Map<Integer, Float>> scores;
+    /** System property holding the number of scoring threads. */
+    public static final String PROP_THREADS = "senone.threads";
+
+    private static final int BLOCK_FRAMES = 1024;
+    // Senones scored by one task before it stops splitting.
+    private static final int MIN_SENONES_PER_TASK = 256;
+
     private final Pool<Senone> senonePool;
+    private final ForkJoinPool pool;
+    private final int numSenones;
+    private final List<float[]> blocks;
+    private long[] times;
+    private int numFrames;
 
     public SenoneDump(Loader loader) {
-        this.scores = new LinkedHashMap<Long, Map<Integer, Float>>();
+        this(loader, Integer.getInteger(PROP_THREADS, 1));
+    }
+
+    public SenoneDump(Loader loader, int threads) {
         this.senonePool = loader.getSenonePool();
+        this.pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+        this.numSenones = senonePool.size();
+        this.blocks = new ArrayList<float[]>();
+        this.times = new long[BLOCK_FRAMES];
+        this.numFrames = 0;
     }
 
     public void addFrame(Data data) {
         if (data instanceof FloatData) {
             FloatData fd = (FloatData) data;
-            long time = fd.getCollectTime();
-            System.out.println("Adding data... " + time);
-
-            Map<Integer, Float> frameMap = new LinkedHashMap<Integer, Float>();
-            scores.put(time, frameMap);
+            int frame = newFrame(fd.getCollectTime());
+            float[] block = blocks.get(frame / BLOCK_FRAMES);
+            int offset = (frame % BLOCK_FRAMES) * numSenones;
 
-            for (int i = 0; i < senonePool.size(); ++i) {
-                frameMap.put(i, senonePool.get(i).getScore(fd));
+            if (pool == null) {
+                for (int i = 0; i < numSenones; ++i) {
+                    block[offset + i] = senonePool.get(i).getScore(fd);
+                }
+            } else {
+                pool.invoke(new ScoreTask(fd, block, offset, 0, numSenones));
             }
         } else {
             throw new RuntimeException("Cannot score non-float data!");
         }
     }
 
+    /**
+     * Scores a sequence of frames.
+     * @param frames feature frames, in time order
+     */
+    public void addFrames(List<? extends Data> frames) {
+        for (Data data : frames) addFrame(data);
+    }
+
+    /**
+     * Stops the scoring threads, if any.
+     */
+    public void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    public int getFrameCount() {
+        return numFrames;
+    }
+
+    public int getSenoneCount() {
+        return numSenones;
+    }
+
+    /**
+     * Gets the collect time of a frame.
+     * @param frame frame index
+     * @return collect time in milliseconds
+     */
+    public long getTime(int frame) {
+        checkFrame(frame);
+        return times[frame];
+    }
+
+    public float getScore(int frame, int senoneId) {
+        checkFrame(frame);
+        checkSenone(senoneId);
+        return blocks.get(frame / BLOCK_FRAMES)
+            [(frame % BLOCK_FRAMES) * numSenones + senoneId];
+    }
+
+    /**
+     * Gets the scores of every senone for one frame.
+     * @param frame frame index
+     * @return scores indexed by senone id
+     */
+    public float[] getRow(int frame) {
+        checkFrame(frame);
+        int offset = (frame % BLOCK_FRAMES) * numSenones;
+        return Arrays.copyOfRange(blocks.get(frame / BLOCK_FRAMES),
+                offset, offset + numSenones);
+    }
+
+    /**
+     * Gets the scores of one senone across every frame.
+     * @param senoneId senone id
+     * @return scores indexed by frame
+     */
+    public float[] getColumn(int senoneId) {
+        checkSenone(senoneId);
+        float[] column = new float[numFrames];
+        for (int frame = 0; frame < numFrames; ++frame) {
+            column[frame] = blocks.get(frame / BLOCK_FRAMES)
+                [(frame % BLOCK_FRAMES) * numSenones + senoneId];
+        }
+        return column;
+    }
+
+    /**
+     * Gets the ids of the best scoring senones for a frame.
+     * @param frame frame index
+     * @param n number of senones
+     * @return senone ids, best first
+     */
+    public int[] getTopSenones(int frame, int n) {
+        checkFrame(frame);
+        if (n < 0) throw new IllegalArgumentException("Negative senone count " + n);
+        if (n == 0) return new int[0];
+        float[] block = blocks.get(frame / BLOCK_FRAMES);
+        int offset = (frame % BLOCK_FRAMES) * numSenones;
+        n = Math.min(n, numSenones);
+
+        // Insertion into a small sorted buffer; n is expected to be small.
+        int[] top = new int[n];
+        int count = 0;
+        for (int i = 0; i < numSenones; ++i) {
+            float score = block[offset + i];
+            if (count == n && score <= block[offset + top[n - 1]]) continue;
+
+            int pos = (count < n) ? count++ : n - 1;
+            while (pos > 0 && block[offset + top[pos - 1]] < score) {
+                top[pos] = top[pos - 1];
+                --pos;
+            }
+            top[pos] = i;
+        }
+        return top;
+    }
+
     public void print() {
-        System.out.println("Frames: " + scores.size());
-        System.out.println("Senones: " + senonePool.size());
+        System.out.println("Frames: " + numFrames);
+        System.out.println("Senones: " + numSenones);
+    }
+
+    private int newFrame(long time) {
+        int frame = numFrames++;
+        if (frame / BLOCK_FRAMES == blocks.size()) {
+            blocks.add(new float[BLOCK_FRAMES * numSenones]);
+        }
+        if (frame == times.length) {
+            times = Arrays.copyOf(times, times.length * 2);
+        }
+        times[frame] = time;
+        return frame;
+    }
+
+    /**
+     * Scores a range of senones for one frame, splitting the range in half
+     * until it is small enough to score directly.
+     */
+    private class ScoreTask extends RecursiveAction {
+        private final FloatData data;
+        private final float[] block;
+        private final int offset;
+        private final int from;
+        private final int to;
+
+        ScoreTask(FloatData data, float[] block, int offset, int from, int to) {
+            this.data = data;
+            this.block = block;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_SENONES_PER_TASK) {
+                for (int i = from; i < to; ++i) {
+                    block[offset + i] = senonePool.get(i).getScore(data);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScoreTask(data, block, offset, from, mid),
+                        new ScoreTask(data, block, offset, mid, to));
+            }
+        }
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= numFrames)
+            throw new IndexOutOfBoundsException("No frame " + frame);
+    }
+
+    private void checkSenone(int senoneId) {
+        if (senoneId < 0 || senoneId >= numSenones)
+            throw new IndexOutOfBoundsException("No senone " + senoneId);
     }
 }
@@ -0,0 +1,239 @@
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import edu.cmu.sphinx.api.*;
+import edu.cmu.sphinx.util.BatchFile;
+
+/**
+ * Resident server that keeps models loaded between jobs.
+ * Listens on a localhost port and takes one job per connection: a single
+ * line holding a command (align, dump, segment or transcribe) followed by
+ * a batch line, or just "stats" for the Metrics collected so far.
+ *
+ * The reply is the same text the matching batch tool prints for that
+ * line, followed by a status line: "OK" with the milliseconds the job
+ * waited and ran, or "ERROR" with a message.  Jobs run on a fixed pool
+ * of workers, each with its own session; connections beyond the queue
+ * limit are turned away with "ERROR busy".  Request lines are read by a
+ * separate bounded pool of reader threads, so slow clients never hold a
+ * worker, and connections beyond its queue are turned away the same way.
+ *
+ * Example: echo "segment /data/a.wav hello world" | nc localhost 7070
+ */
+public class SpeechServer {
+    /** System property holding the port to listen on. */
+    public static final String PROP_PORT = "server.port";
+    /** System property holding the number of jobs that may wait. */
+    public static final String PROP_QUEUE = "server.queue";
+    /** System property holding the number of request reading threads. */
+    public static final String PROP_READERS = "server.readers";
+
+    // Clients must send their request line within this time.
+    private static final int READ_TIMEOUT = 10000;
+
+    public static void main(String args[]) throws Exception {
+        Context.setCustomConfig("/audio/tools/transcription/jar/config.xml");
+
+        if (args.length > 0) {
+            String transformPath = args[0];
+            System.err.println("Loading transform from... " + transformPath);
+            SpeechTools.setTransform(transformPath);
+        }
+
+        int port = Integer.getInteger(PROP_PORT, 7070);
+        int workers = BatchExecutor.getWorkerCount();
+        int queue = Math.max(1, Integer.getInteger(PROP_QUEUE, workers * 4));
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers,
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queue),
+                new WorkerFactory("server-worker-"));
+        warm(executor, workers);
+
+        // Readers are cheap threads, but idle clients can hold them for
+        // READ_TIMEOUT, so connections beyond the reader queue are turned
+        // away too.
+        int readers = Math.max(1, Integer.getInteger(PROP_READERS, 16));
+        ThreadPoolExecutor reader = new ThreadPoolExecutor(readers, readers,
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(readers),
+                new WorkerFactory("server-reader-"));
+
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        System.err.println("Listening on " + server.getLocalSocketAddress()
+                + " with " + workers + " workers");
+
+        while (true) {
+            final Socket socket = server.accept();
+            try {
+                reader.execute(new Runnable() {
+                    public void run() {
+                        accept(socket, executor);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                reply(socket, "ERROR busy");
+            }
+        }
+    }
+
+    /**
+     * Loads a session and a recognizer on every worker before the first
+     * job arrives.
+     */
+    private static void warm(ThreadPoolExecutor executor, int workers) throws Exception {
+        long start = System.nanoTime();
+        RecognizerPool.warm(workers, SpeechTools.getTransform());
+
+        // The barrier holds each worker until all have loaded, so every
+        // worker runs exactly one of these tasks.
+        final CyclicBarrier barrier = new CyclicBarrier(workers + 1);
+        for (int i = 0; i < workers; ++i) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        SpeechTools.getSession();
+                        barrier.await();
+                    } catch (Exception e) {
+                        e.printStackTrace(System.err);
+                        System.exit(-1);
+                    }
+                }
+            });
+        }
+        barrier.await();
+        System.err.printf("Loaded models in %.1fs\n", (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Reads the request line of a connection and queues its job.
+     */
+    private static void accept(final Socket socket, ThreadPoolExecutor executor) {
+        final String request;
+        try {
+            socket.setSoTimeout(READ_TIMEOUT);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            request = in.readLine();
+        } catch (Exception e) {
+            System.err.println("WARNING: dropped connection: " + e);
+            close(socket);
+            return;
+        }
+
+        final long queued = System.nanoTime();
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    handle(socket, request, queued);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reply(socket, "ERROR busy");
+        }
+    }
+
+    private static void handle(Socket socket, String request, long queued) {
+        long start = System.nanoTime();
+        try {
+            PrintStream out = new PrintStream(
+                    new BufferedOutputStream(socket.getOutputStream()), false, "UTF-8");
+
+            String status;
+            try {
+                run(request, out);
+                status = String.format("OK queued=%d run=%d",
+                        (start - queued) / 1000000, (System.nanoTime() - start) / 1000000);
+            } catch (Exception e) {
+                e.printStackTrace(System.err);
+                // The status must stay on one line.
+                status = "ERROR " + e.toString().replaceAll("\\s+", " ").trim();
+            }
+            out.println(status);
+            out.flush();
+            System.err.println(status + " " + request);
+        } catch (Exception e) {
+            System.err.println("WARNING: dropped connection: " + e);
+        } finally {
+            close(socket);
+        }
+    }
+
+    /**
+     * Runs one job and writes its output.
+     * @param request command and batch line
+     * @param out output to the client
+     */
+    private static void run(String request, PrintStream out) throws Exception {
+        if (request == null) throw new IllegalArgumentException("empty request");
+        request = request.trim();
+        int space = request.indexOf(' ');
+        String command = (space < 0) ? request : request.substring(0, space);
+        String line = (space < 0) ? "" : request.substring(space + 1).trim();
+
+        if (command.equals("stats")) {
+            Metrics.write(out);
+            return;
+        }
+        if (line.isEmpty()) throw new IllegalArgumentException("missing batch line");
+        String fileName = BatchFile.getFilename(line);
+
+        if (command.equals("align") || command.equals("dump")) {
+            new TextAlignmentSink(out).write(fileName,
+                    SpeechTools.getTranscriptAlignment(line));
+        } else if (command.equals("segment")) {
+            List<Segment> segments = SpeechTools.getTranscriptAlignment(line).getSegments();
+            out.println(fileName);
+            for (Segment s : segments) out.println(s);
+            out.println();
+        } else if (command.equals("transcribe")) {
+            out.println(SpeechTools.transcribe(new AudioBuffer(
+                            new File(fileName).toURI().toURL())));
+        } else {
+            throw new IllegalArgumentException("unknown command " + command);
+        }
+    }
+
+    private static void reply(Socket socket, String status) {
+        try {
+            PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8");
+            out.println(status);
+        } catch (Exception e) {
+            // Client already gone.
+        } finally {
+            close(socket);
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (Exception e) { }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private final String prefix;
+        private int count = 0;
+
+        WorkerFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + (count++));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.*;
+
+/**
+ * Data processor that records speech classified data as it passes through
+ * the front end and hands the underlying audio on to the next processor.
+ * This lets a single pipeline produce both the speech classification and
+ * the cepstral features for a file.
+ */
+public class SpeechTap extends BaseDataProcessor {
+    private final List<SpeechClassifiedData> speechData;
+
+    public SpeechTap() {
+        this.speechData = new ArrayList<SpeechClassifiedData>();
+    }
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        speechData.clear();
+    }
+
+    @Override
+    public Data getData() throws DataProcessingException {
+        Data data = getPredecessor().getData();
+        if (data instanceof SpeechClassifiedData) {
+            SpeechClassifiedData classified = (SpeechClassifiedData) data;
+            speechData.add(classified);
+            return classified.getDoubleData();
+        }
+        return data;
+    }
+
+    /**
+     * Removes and returns the speech classified data recorded so far.
+     * @return list of speech classified data
+     */
+    public List<SpeechClassifiedData> drain() {
+        List<SpeechClassifiedData> out =
+            new ArrayList<SpeechClassifiedData>(speechData);
+        speechData.clear();
+        return out;
+    }
+}
@@ -30,41 +30,46 @@ public class SpeechTools {
             //"/audio/models/transcription/en_us_nostress/cmudict-5prealpha.dict";
     private static final String G2P_PATH =
             "/audio/models/transcription/en_us_nostress/model.fst.ser";
-    private static Context context;
-    private static StreamSpeechRecognizer recognizer;
-    private static String transformPath;
+    private static final ThreadLocal<AlignmentSession> session =
+            new ThreadLocal<AlignmentSession>();
+    private static volatile String transformPath;
 
     ///////////////////
     /* Sphinx tools. */
     ///////////////////
 
     /**
-     * Gets the Context.
-     * @return context
+     * Gets the alignment session for the calling thread.  Each thread
+     * keeps its own session, and so its own front ends and speech source,
+     * until the transform changes.
+     * Callers that manage their own threads can instead check sessions out
+     * of the ModelRegistry directly.
+     * @return alignment session
      */
-    public static Context getContext() {
-        if (context == null)
-            initializeContext();
-        return context;
+    public static AlignmentSession getSession() throws Exception {
+        AlignmentSession current = session.get();
+        ModelRegistry.ModelKey key = getModelKey();
+        if (current == null || !current.key.equals(key)) {
+            if (current != null) current.close();
+            current = ModelRegistry.acquire(key);
+            session.set(current);
+        }
+        return current;
     }
 
-    public static void initializeContext() {
-        Configuration config = new Configuration();
-        config.setAcousticModelPath(ACOUSTIC_MODEL_PATH);
-        config.setDictionaryPath(DICTIONARY_PATH);
+    /**
+     * Gets the Context for the calling thread.
+     * @return context
+     */
+    public static Context getContext() {
+        Context context = null;
         try {
-            context = new Context(config);
-            if (transformPath != null) {
-                ClusteredDensityFileData clusters = new ClusteredDensityFileData(context.getLoader(), 1);
-                Transform transform = new Transform((Sphinx3Loader)context.getLoader(), 1);
-                transform.load(transformPath);
-                context.getLoader().update(transform, clusters);
-            }
-
+            context = getSession().getContext();
         } catch (Exception e) {
             e.printStackTrace(System.err);
             System.exit(-1);
         }
+        return context;
     }
 
     public static Dictionary getDictionary() {
@@ -79,12 +84,14 @@ public class SpeechTools {
         return dictionary;
     }
 
+    /**
+     * Gets the aligner for the current models and transform.
+     * @return speech aligner
+     */
     public static SpeechAligner getSpeechAligner() {
         SpeechAligner aligner = null;
         try {
-            aligner = new SpeechAligner(ACOUSTIC_MODEL_PATH, DICTIONARY_PATH, G2P_PATH);
-            aligner.setTokenizer(new USEnglishTokenizer());
-            if (transformPath != null) aligner.setTransform(transformPath);
+            aligner = getSession().getSpeechAligner();
         } catch (Exception e) {
             e.printStackTrace(System.err);
             System.exit(-1);
@@ -92,35 +99,35 @@ public class SpeechTools {
         return aligner;
     }
 
-    public static StreamSpeechRecognizer getRecognizer() {
-        if (recognizer == null) {
-            initializeRecognizer();
+    /**
+     * Gets the models used for alignment.  When a ModelSnapshot is set,
+     * its dictionary replaces the full dictionary and the G2P model.
+     * @return model combination
+     */
+    public static ModelRegistry.ModelKey getModelKey() {
+        if (ModelSnapshot.isEnabled()) {
+            return new ModelRegistry.ModelKey(ACOUSTIC_MODEL_PATH,
+                    ModelSnapshot.getPath(), null, transformPath);
         }
-        return recognizer;
+        return getFullModelKey();
     }
 
-    public static void setTransform(String transformPath) throws Exception {
-        SpeechTools.transformPath = transformPath;
-        initializeRecognizer();
+    public static ModelRegistry.ModelKey getFullModelKey() {
+        return new ModelRegistry.ModelKey(ACOUSTIC_MODEL_PATH,
+                DICTIONARY_PATH, G2P_PATH, transformPath);
     }
 
-    public static void initializeRecognizer() {
-        try {
-            Configuration configuration = new Configuration();
-
-            configuration
-                    .setAcousticModelPath("/audio/models/transcription/acoustic/models/en-us");
-            configuration
-                    .setLanguageModelPath("/audio/models/transcription/language/models/en-us.lm");
-            configuration
-                    .setDictionaryPath("/audio/models/transcription/dictionary/cmudict-en-us.dict");
+    public static String getTransform() {
+        return transformPath;
+    }
 
-            recognizer = new StreamSpeechRecognizer(configuration);
-            if (transformPath != null) recognizer.loadTransform(transformPath, 1);
-        } catch (Exception e) {
-            e.printStackTrace(System.err);
-            System.exit(-1);
-        }
+    /**
+     * Sets the transform used for alignment and transcription.  Sessions
+     * and recognizers pick it up the next time they are checked out.
+     * @param transformPath path of transform file
+     */
+    public static void setTransform(String transformPath) throws Exception {
+        SpeechTools.transformPath = transformPath;
     }
 
 
@@ -134,48 +141,36 @@ public class SpeechTools {
      * @return list of speech classified data
      */
     public static List<SpeechClassifiedData> getSpeechClassifiedData(URL audioUrl) throws Exception {
-        //System.out.println("Get speech data...");
-        List<SpeechClassifiedData> out = new ArrayList<SpeechClassifiedData>();
-
-        Context context = getContext();
-        ConfigurationManager cm = context.getConfigurationManager();
-
-        FrontEnd frontEnd = cm.lookup("speechFrontEnd");
-        context.setSpeechSource(audioUrl.openStream());
+        return getSession().getSpeechClassifiedData(audioUrl);
+    }
 
-        Data data = null;
-        while ((data = frontEnd.getData()) != null) {
-            if (data instanceof SpeechClassifiedData) {
-                out.add((SpeechClassifiedData) data);
-            }
-        }
-        return out;
+    public static List<SpeechClassifiedData> getSpeechClassifiedData(AudioBuffer audio) throws Exception {
+        return getSession().getSpeechClassifiedData(audio);
     }
 
 
     /**
      * Extracts feature data from an input stream.
      * @param audioUrl url of audio file
-     * @param classifySpeech whether to include speech classification
      * @return list of feature data
      */
     public static List<FloatData> getFeatures(URL audioUrl) throws Exception {
-        //System.out.println("Get features...");
-        List<FloatData> out = new ArrayList<FloatData>();
+        return getSession().getFeatures(audioUrl);
+    }
 
-        Context context = getContext();
-        ConfigurationManager cm = context.getConfigurationManager();
+    public static List<FloatData> getFeatures(AudioBuffer audio) throws Exception {
+        return getSession().getFeatures(audio);
+    }
 
-        FrontEnd frontEnd = cm.lookup("unmarkedFrontEnd");
-        context.setSpeechSource(audioUrl.openStream());
 
-        Data data = null;
-        while ((data = frontEnd.getData()) != null) {
-            if (data instanceof FloatData) {
-                out.add((FloatData) data);
-            }
-        }
-        return out;
+    /**
+     * Extracts speech classified data and feature data from a single pass
+     * over buffered audio.
+     * @param audio buffered audio
+     * @return speech classified data and features
+     */
+    public static FrontEndData getFrontEndData(AudioBuffer audio) throws Exception {
+        return getSession().getFrontEndData(audio);
     }
 
 
@@ -190,13 +185,7 @@ public class SpeechTools {
      * @return senone dump
      */
     public static SenoneDump getSenoneDump(URL audioUrl) throws Exception {
-        SenoneDump dmp = new SenoneDump(getContext().getLoader());
-        for (Data data : getFeatures(audioUrl)) {
-            if (data instanceof FloatData) {
-                dmp.addFrame(data);
-            }
-        }
-        return dmp;
+        return getSession().getSenoneDump(audioUrl);
     }
 
     //////////////////////
@@ -218,14 +207,50 @@ public class SpeechTools {
         return getTranscriptAlignment(audioUrl, transcript);
     }
 
+    /**
+     * Aligns a transcript to audio.  Recordings are aligned in pieces when
+     * a piece length is set with the align.chunk system property, and
+     * alignments are reused from the AlignmentCache when it is enabled.
+     * Transcripts that the ModelSnapshot does not cover are aligned with
+     * the full models.
+     * @param audioUrl audio location
+     * @param transcript transcript
+     * @return transcript alignment
+     */
     public static TranscriptAlignment getTranscriptAlignment(URL audioUrl, String transcript) throws Exception {
-        Context context = getContext();
-        context.setLocalProperty("trivialScorer->frontend", "unmarkedFrontEnd");
+        AudioBuffer audio = new AudioBuffer(audioUrl);
+        Metrics.addAudio(audio.getDuration());
+        long chunkLength = ChunkedAligner.getChunkLength();
+
+        // Snapshot pronunciations are copied from the full dictionary and
+        // G2P model, so alignments are keyed on the full models whether or
+        // not the snapshot was used.  Growing the snapshot then leaves the
+        // cache valid.
+        String cacheKey = null;
+        if (AlignmentCache.isEnabled()) {
+            cacheKey = AlignmentCache.getKey(audio, transcript, getFullModelKey(), chunkLength);
+            TranscriptAlignment cached = AlignmentCache.load(cacheKey);
+            if (cached != null) return cached;
+        }
+
+        AlignmentSession session = getSession();
+        boolean fallback = ModelSnapshot.isEnabled()
+            && !ModelSnapshot.covers(session.getTranscriptWords(transcript));
+        if (fallback) session = ModelRegistry.acquire(getFullModelKey());
+
+        TranscriptAlignment t;
+        try {
+            if (chunkLength > 0) {
+                t = ChunkedAligner.align(session, audio, transcript);
+            } else {
+                t = session.getTranscriptAlignment(audio, transcript);
+            }
+        } finally {
+            if (fallback) session.close();
+        }
 
-        return new TranscriptAlignment(transcript,
-                getWordAlignment(audioUrl, transcript), 
-                getSpeechClassifiedData(audioUrl),
-                getFeatures(audioUrl));
+        if (cacheKey != null) AlignmentCache.store(cacheKey, t);
+        return t;
     }
 
     /**
@@ -235,8 +260,7 @@ public class SpeechTools {
      * @return word alignment list
      */
     public static List<WordResult> getWordAlignment(URL audioUrl, String transcript) throws Exception {
-        //System.out.println("Get word alignment...");
-        return getSpeechAligner().align(audioUrl, transcript);
+        return getSession().getWordAlignment(audioUrl, transcript);
     }
 
     //////////////////////////
@@ -244,22 +268,41 @@ public class SpeechTools {
     //////////////////////////
 
     public static String transcribe(URL audioUrl) throws Exception {
-        initializeRecognizer();
-        StreamSpeechRecognizer recognizer = getRecognizer();
+        return transcribe(new AudioBuffer(audioUrl));
+    }
+
+    /**
+     * Recognizes audio with the generic model on a pooled recognizer, so
+     * it can be called from several threads at once.
+     * @param audio buffered audio
+     * @return hypothesis
+     */
+    public static String transcribe(AudioBuffer audio) throws Exception {
+        Metrics.addAudio(audio.getDuration());
+        StreamSpeechRecognizer recognizer = RecognizerPool.acquire(transformPath);
 
         // Simple recognition with generic model
-        InputStream stream = audioUrl.openStream();
-        stream.skip(44);
+        Metrics.Timer timer = Metrics.start(Metrics.DECODE);
+        InputStream stream = audio.openStream();
 
         List<String> output = new ArrayList<String>();
-
-        SpeechResult result;
-        recognizer.startRecognition(stream);
-        while ((result = recognizer.getResult()) != null) {
-            output.add(result.getHypothesis());
-            System.out.println(result.getHypothesis());
+        boolean finished = false;
+        try {
+            SpeechResult result;
+            recognizer.startRecognition(stream);
+            while ((result = recognizer.getResult()) != null) {
+                output.add(result.getHypothesis());
+            }
+            recognizer.stopRecognition();
+            finished = true;
+        } finally {
+            stream.close();
+            timer.stop();
+
+            // Only hand the recognizer back once it has finished cleanly;
+            // one that failed mid-utterance is dropped.
+            if (finished) RecognizerPool.release(recognizer, transformPath);
         }
-        recognizer.stopRecognition();
 
         StringBuilder sb = new StringBuilder();
         if (output.size() > 0) {
@@ -0,0 +1,80 @@
+import edu.cmu.sphinx.decoder.adaptation.*;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.*;
+
+/**
+ * Merges adaptation statistics collected over separate parts of a batch.
+ * Stats only accumulates sums of per-frame terms, so adding the partial
+ * sums together gives the same statistics as collecting every frame into
+ * one Stats, up to floating point rounding.
+ *
+ * Stats keeps its frame count to itself, so the merger counts frames as
+ * they are added and makes the enough-data decision that
+ * Stats.createTransform() would.
+ */
+public class StatsMerger {
+    // Frames needed per cluster, as in Stats.createTransform().
+    public static final int MIN_FRAMES = 300;
+
+    private final Loader loader;
+    private final int numClusters;
+    private Stats stats = null;
+    private long frames = 0;
+
+    /**
+     * @param loader loader the first stats were created with
+     * @param numClusters number of clusters of every stats
+     */
+    public StatsMerger(Loader loader, int numClusters) {
+        this.loader = loader;
+        this.numClusters = numClusters;
+    }
+
+    /**
+     * Adds partial stats.  All must have been created for the same
+     * acoustic model and number of clusters.
+     * @param partial stats to add
+     * @param partialFrames number of frames collected into them
+     */
+    public void add(Stats partial, long partialFrames) {
+        if (stats == null) stats = partial;
+        else merge(stats, partial);
+        frames += partialFrames;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * Creates a transform from the merged stats.
+     * @return transform, or null if there are not enough frames
+     */
+    public Transform createTransform() throws Exception {
+        if (stats == null || frames < (long) MIN_FRAMES * numClusters) return null;
+        Transform transform = new Transform((Sphinx3Loader) loader, numClusters);
+        transform.update(stats);
+        return transform;
+    }
+
+    /**
+     * Adds the statistics in from to into.
+     * @param into stats to add to
+     * @param from stats to add
+     */
+    public static void merge(Stats into, Stats from) {
+        add(into.getRegLs(), from.getRegLs());
+        add(into.getRegRs(), from.getRegRs());
+    }
+
+    private static void add(Object into, Object from) {
+        if (into instanceof double[]) {
+            double[] a = (double[]) into;
+            double[] b = (double[]) from;
+            for (int i = 0; i < a.length; ++i) a[i] += b[i];
+        } else {
+            Object[] a = (Object[]) into;
+            Object[] b = (Object[]) from;
+            for (int i = 0; i < a.length; ++i) add(a[i], b[i]);
+        }
+    }
+}
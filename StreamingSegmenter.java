@@ -0,0 +1,367 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import edu.cmu.sphinx.util.TimeFrame;
+
+/**
+ * Incremental version of TranscriptAlignment.getSegments().
+ * Frames and word alignments are fed in as they are produced, and segments
+ * become available from drain() as soon as the silences around them are
+ * confirmed and the 5000ms merge rule can no longer change them.  The
+ * output for a whole recording is the same as getSegments().
+ *
+ * Frames must be added in time order and words in transcript order, with
+ * word times increasing.  State is kept only for the span since the last
+ * confirmed segment boundary, so memory does not grow with the length of
+ * the recording.
+ */
+public class StreamingSegmenter {
+    public static final long SILENCE_THRESHOLD = 150;
+    public static final long MERGE_THRESHOLD = 5000;
+
+    private final long silenceThreshold;
+    private final long mergeThreshold;
+
+    // Frames: the empty run being extended.
+    private boolean inRun = false;
+    private long runStart;
+    private long runEnd;
+    private long lastFrame = 0;
+    private long numFrames = 0;
+
+    // Silences waiting for words to confirm or reject them.
+    private final Deque<Candidate> candidates = new ArrayDeque<Candidate>();
+    // Word and confusion times that may still overlap a candidate.
+    private final Deque<TimeFrame> occupied = new ArrayDeque<TimeFrame>();
+    private long numWords = 0;
+    private boolean badTranscript = false;
+    private boolean inConfusion = false;
+    private long lastEnd = 0;
+    private long lastStart = Long.MIN_VALUE;
+
+    // Segments: confirmed silences and words not yet assigned.
+    private final Deque<TimeFrame> regions = new ArrayDeque<TimeFrame>();
+    private final Deque<WordAlignment> words = new ArrayDeque<WordAlignment>();
+    private TimeFrame left = null;
+    private List<WordAlignment> segmentWords = new ArrayList<WordAlignment>();
+    private boolean split = false;
+
+    // Merging: the segment waiting for its right neighbour, and the last
+    // merged segment, which a short neighbour can still extend.
+    private Segment pending = null;
+    private Segment tail = null;
+    private int numSegments = 0;
+
+    private final List<Segment> output = new ArrayList<Segment>();
+    private boolean finished = false;
+
+    public StreamingSegmenter() {
+        this(SILENCE_THRESHOLD, MERGE_THRESHOLD);
+    }
+
+    /**
+     * @param silenceThreshold minimum length of a splitting silence
+     * @param mergeThreshold segments shorter than this are merged
+     */
+    public StreamingSegmenter(long silenceThreshold, long mergeThreshold) {
+        this.silenceThreshold = silenceThreshold;
+        this.mergeThreshold = mergeThreshold;
+    }
+
+    /**
+     * Adds a frame that has features.
+     * @param time collect time in milliseconds
+     * @param isSpeech whether the frame was classified as speech
+     * @param isAligned whether the frame was aligned to a word
+     */
+    public void addFrame(long time, boolean isSpeech, boolean isAligned) {
+        checkOpen();
+        lastFrame = time;
+        ++numFrames;
+        if (isSpeech || isAligned) return;
+
+        // Same run detection as TranscriptAlignment.getEmptyRegions(); a run
+        // is only closed by the next empty frame.
+        if (!inRun) {
+            inRun = true;
+            runStart = runEnd = time;
+        } else if (time == runEnd + FrameTable.FRAME_SHIFT) {
+            runEnd = time;
+        } else if (time > runEnd + FrameTable.FRAME_SHIFT) {
+            if (runEnd != runStart && runEnd - runStart >= silenceThreshold
+                    && runStart != 0) {
+                addCandidate(new TimeFrame(runStart, runEnd));
+            }
+            runStart = runEnd = time;
+            prune();
+        }
+    }
+
+    /**
+     * Adds every present row of a frame table.
+     * @param frames frame table
+     */
+    public void addFrames(FrameTable frames) {
+        for (int row = frames.nextRow(0); row >= 0; row = frames.nextRow(row + 1)) {
+            addFrame(frames.getTime(row), frames.isSpeech(row), frames.isAligned(row));
+        }
+    }
+
+    /**
+     * Adds the next word of the transcript.
+     * @param word word alignment, with a null time if it was not found
+     */
+    public void addWord(WordAlignment word) {
+        checkOpen();
+        words.add(word);
+
+        // Same confusion regions as getConfusionTimeFrames(), where the
+        // first word only decides whether the transcript starts confused.
+        if (numWords++ == 0) {
+            inConfusion = (word.time == null);
+        } else if (word.time == null) {
+            inConfusion = true;
+        } else {
+            if (inConfusion) occupy(new TimeFrame(lastEnd, word.time.getStart()));
+            lastEnd = word.time.getEnd();
+            inConfusion = false;
+        }
+
+        if (word.time != null) {
+            lastStart = word.time.getStart();
+            occupy(word.time);
+        }
+
+        // Nothing later can overlap a silence that ends before this word.
+        while (!candidates.isEmpty()
+                && candidates.peek().time.getEnd() < lastStart) {
+            confirm(candidates.poll());
+        }
+        prune();
+        assignWords();
+    }
+
+    public void addWords(List<WordAlignment> words) {
+        for (WordAlignment word : words) addWord(word);
+    }
+
+    /**
+     * Marks the transcript as bad, as TranscriptAlignment does when the
+     * aligner returned no word results.  Bad transcripts get no segments.
+     * @param badTranscript whether the transcript could not be aligned
+     */
+    public void setBadTranscript(boolean badTranscript) {
+        checkOpen();
+        this.badTranscript = badTranscript;
+    }
+
+    /**
+     * Segments a whole alignment.
+     * @param t transcript alignment
+     * @return the same segments as t.getSegments()
+     */
+    public static List<Segment> getSegments(TranscriptAlignment t) {
+        Metrics.Timer timer = Metrics.start(Metrics.SEGMENT);
+        StreamingSegmenter segmenter = new StreamingSegmenter();
+        segmenter.setBadTranscript(t.badTranscript);
+        segmenter.addFrames(t.frames);
+        segmenter.addWords(t.words);
+        segmenter.finish();
+        List<Segment> segments = segmenter.drain();
+        timer.stop();
+        return segments;
+    }
+
+    /**
+     * Ends the recording and releases the remaining segments.
+     */
+    public void finish() {
+        checkOpen();
+        finished = true;
+
+        // Like getSegments(), make no attempt on a bad transcript.
+        if (badTranscript || numFrames == 0) {
+            candidates.clear();
+            regions.clear();
+            words.clear();
+            pending = tail = null;
+            return;
+        }
+
+        while (!candidates.isEmpty()) confirm(candidates.poll());
+
+        if (!split && regions.isEmpty()) {
+            // No silences at all: one segment, not merged.
+            Segment s = new Segment(null, new TimeFrame(0, lastFrame), null);
+            s.words = segmentWords;
+            s.words.addAll(words);
+            words.clear();
+            output.add(s);
+            return;
+        }
+
+        assignWords();
+        if (!words.isEmpty()) {
+            System.err.println("WARNING: word not added to segment");
+            words.clear();
+        }
+        closeSegment(regions.peek());
+        regions.clear();
+
+        if (numSegments == 1) {
+            output.add(pending);
+        } else if (pending != null) {
+            mergeNext(null);
+        }
+        if (tail != null) output.add(tail);
+        pending = tail = null;
+    }
+
+    /**
+     * Gets the segments completed since the last call.
+     * @return segments, in time order
+     */
+    public List<Segment> drain() {
+        List<Segment> segments = new ArrayList<Segment>(output);
+        output.clear();
+        return segments;
+    }
+
+    private void checkOpen() {
+        if (finished) throw new IllegalStateException("Segmenter is finished");
+    }
+
+    private void addCandidate(TimeFrame time) {
+        Candidate candidate = new Candidate(time);
+        for (TimeFrame t : occupied) {
+            if (overlaps(t, time)) candidate.valid = false;
+        }
+        if (time.getEnd() < lastStart) confirm(candidate);
+        else candidates.add(candidate);
+    }
+
+    private void occupy(TimeFrame time) {
+        for (Candidate candidate : candidates) {
+            if (overlaps(time, candidate.time)) candidate.valid = false;
+        }
+        occupied.add(time);
+    }
+
+    /**
+     * Drops word and confusion times that end before any silence that is
+     * still to be checked.
+     */
+    private void prune() {
+        long start;
+        if (!candidates.isEmpty()) start = candidates.peek().time.getStart();
+        else if (inRun) start = runStart;
+        else if (numFrames > 0) start = lastFrame + 1;
+        else return;
+
+        while (!occupied.isEmpty() && occupied.peek().getEnd() < start) {
+            occupied.poll();
+        }
+    }
+
+    private void confirm(Candidate candidate) {
+        if (candidate.valid) regions.add(candidate.time);
+    }
+
+    private long getSegmentEnd() {
+        TimeFrame right = regions.peek();
+        if (right == null) return lastFrame;
+        return (left == null) ? right.getStart()
+            : right.getStart() - FrameTable.FRAME_SHIFT;
+    }
+
+    /**
+     * Assigns words to the current segment, moving on to the next segment
+     * as getSegments() does.  Stops when the end of the current segment is
+     * not yet known.
+     */
+    private void assignWords() {
+        while (!words.isEmpty()) {
+            WordAlignment word = words.peek();
+            if (word.time != null) {
+                if (regions.isEmpty() && !finished) return;
+                if (word.time.getStart() > getSegmentEnd()) {
+                    if (regions.isEmpty()) return;
+
+                    TimeFrame right = regions.poll();
+                    closeSegment(right);
+                    left = right;
+                    split = true;
+                }
+            }
+            segmentWords.add(words.poll());
+        }
+    }
+
+    private void closeSegment(TimeFrame right) {
+        TimeFrame time;
+        if (left == null) {
+            time = new TimeFrame(0, (right == null) ? lastFrame : right.getStart());
+        } else if (right == null) {
+            time = new TimeFrame(left.getEnd(), lastFrame);
+        } else {
+            time = new TimeFrame(left.getEnd() + FrameTable.FRAME_SHIFT,
+                    right.getStart() - FrameTable.FRAME_SHIFT);
+        }
+
+        Segment segment = new Segment(left, time, right);
+        segment.words = segmentWords;
+        segmentWords = new ArrayList<WordAlignment>();
+
+        // Empty segments are dropped before merging.
+        if (segment.words.size() > 0) {
+            ++numSegments;
+            if (pending == null) pending = segment;
+            else mergeNext(segment);
+        }
+    }
+
+    /**
+     * Runs one step of Segment.merge() on the pending segment.
+     * @param right following segment, or null at the end
+     */
+    private void mergeNext(Segment right) {
+        Segment curr = pending;
+        pending = right;
+
+        if (curr.words.size() > 0 && curr.getLength() >= mergeThreshold) {
+            append(curr);
+            return;
+        }
+
+        boolean useRight = (tail == null);
+        if (tail != null && right != null)
+            useRight = (tail.getLength() > right.getLength());
+
+        if (useRight) {
+            append(Segment.merge(curr, right));
+            pending = null;
+        } else {
+            tail = Segment.merge(tail, curr);
+        }
+    }
+
+    private void append(Segment segment) {
+        if (tail != null) output.add(tail);
+        tail = segment;
+    }
+
+    private static boolean overlaps(TimeFrame a, TimeFrame b) {
+        return a.getStart() <= b.getEnd() && a.getEnd() >= b.getStart();
+    }
+
+    private static class Candidate {
+        final TimeFrame time;
+        boolean valid = true;
+
+        Candidate(TimeFrame time) {
+            this.time = time;
+        }
+    }
+}
@@ -28,7 +28,7 @@ public class Test {
             audioUrl = new File(args[0]).toURI().toURL();
             transcriptUrl = new File(args[1]).toURI().toURL();
         } else {
-            System.err.println("Usage: java Test <wav> <transcript>");
+            System.err.println("Usage: java [-Ddump.output=<file>] Test <wav> <transcript>");
             System.exit(-1);
         }
 
@@ -46,23 +46,16 @@ public class Test {
         //System.out.println("***************");
         //al.printMergedSegments();
 
-        TranscriptAlignment t = SpeechTools.getTranscriptAlignment(audioUrl, transcriptUrl);
-        for (FrameAlignment f : t.frames.values()) {
-            System.out.println(f);
-        }
-        for (WordAlignment word : t.words) {
-            System.out.println(word);
-        }
-        for (Segment s : t.getSegments()) System.out.println(s);
+        AlignmentSink sink = AlignmentFile.openSink();
+        try {
+            TranscriptAlignment t = SpeechTools.getTranscriptAlignment(audioUrl, transcriptUrl);
+            sink.write(null, t);
 
-        t = SpeechTools.getTranscriptAlignment(audioUrl, transcriptUrl);
-        for (FrameAlignment f : t.frames.values()) {
-            System.out.println(f);
-        }
-        for (WordAlignment word : t.words) {
-            System.out.println(word);
+            t = SpeechTools.getTranscriptAlignment(audioUrl, transcriptUrl);
+            sink.write(null, t);
+        } finally {
+            sink.close();
         }
-        for (Segment s : t.getSegments()) System.out.println(s);
 
 
         //SenoneDump dmp = SpeechTools.getSenoneDump(audioUrl);
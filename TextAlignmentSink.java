@@ -0,0 +1,27 @@
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Prints alignments as text: the file name, then one line per frame, word
+ * and segment, then a blank line.  Alignments written without a name are
+ * printed without the name and the blank line.
+ */
+public class TextAlignmentSink implements AlignmentSink {
+    private final PrintStream out;
+
+    public TextAlignmentSink(PrintStream out) {
+        this.out = out;
+    }
+
+    public void write(String name, TranscriptAlignment t) throws IOException {
+        if (name != null) out.println(name);
+        for (FrameAlignment f : t.frames) out.println(f);
+        for (WordAlignment w : t.words) out.println(w);
+        for (Segment s : t.getSegments()) out.println(s);
+        if (name != null) out.println();
+    }
+
+    public void close() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.linguist.HMMSearchState;
+import edu.cmu.sphinx.linguist.acoustic.HMMState;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+
+/**
+ * Reads the frame level fields of alignment tokens into primitives.
+ * Units are looked up by identity in a local cache and only named the
+ * first time they are seen, so decoding a token allocates nothing.
+ * A decoder holds the fields of the last token decoded and is not safe to
+ * share between threads.
+ */
+public class TokenDecoder {
+    private final Map<Unit, Integer> unitIds = new IdentityHashMap<Unit, Integer>();
+    private long time;
+    private int unitId;
+    private int state;
+    private int mixtureId;
+    private float score;
+
+    /**
+     * Decodes a token whose search state is an HMM state.
+     * @param token alignment token
+     */
+    public void decode(Token token) {
+        HMMState hmmState =
+            ((HMMSearchState) token.getSearchState()).getHMMState();
+        this.time = token.getCollectTime();
+        this.unitId = getUnitId(hmmState.getHMM().getUnit());
+        this.state = hmmState.getState();
+        this.mixtureId = (int) hmmState.getMixtureId();
+        this.score = token.getAcousticScore();
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Gets the id of the token's unit in the UnitTable.
+     * @return unit id
+     */
+    public int getUnitId() {
+        return unitId;
+    }
+
+    public String getUnitName() {
+        return UnitTable.getName(unitId);
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public int getMixtureId() {
+        return mixtureId;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    private int getUnitId(Unit unit) {
+        Integer id = unitIds.get(unit);
+        if (id == null) {
+            id = UnitTable.getId(unit.toString());
+            unitIds.put(unit, id);
+        }
+        return id;
+    }
+}
@@ -1,3 +1,4 @@
+import java.io.File;
 import java.io.InputStream;
 import java.io.FileInputStream;
 
@@ -51,8 +52,7 @@ public class Transcribe {
         //System.out.println("TRANSCRIBING " + args[1]);
 
         // Simple recognition with generic model
-        InputStream stream = new FileInputStream(args[3]);
-        stream.skip(44);
+        InputStream stream = WavFile.open(new File(args[3])).openStream();
 
         SpeechResult result;
         recognizer.startRecognition(stream);
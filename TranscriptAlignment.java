@@ -17,30 +17,48 @@ import edu.cmu.sphinx.frontend.endpoint.*;
 import edu.cmu.sphinx.result.WordResult;
 import edu.cmu.sphinx.linguist.dictionary.*;
 import edu.cmu.sphinx.linguist.HMMSearchState;
+import edu.cmu.sphinx.linguist.acoustic.HMMState;
 import edu.cmu.sphinx.linguist.acoustic.tiedstate.*;
 import edu.cmu.sphinx.util.LogMath;
 import edu.cmu.sphinx.util.TimeFrame;
 
 public class TranscriptAlignment {
     public final List<WordAlignment> words;
-    public final Map<Long, FrameAlignment> frames;
+    public final FrameTable frames;
     public final List<TimeFrame> confusionTimeFrames;
     public final long lastFrame;
     public boolean badTranscript = false;
 
-    public TranscriptAlignment(String transcript,
+    /**
+     * Creates an alignment from already computed words and frames.
+     *
+     * @param words word alignments
+     * @param frames frame table built over the same words
+     * @param badTranscript whether the transcript could not be aligned
+     */
+    public TranscriptAlignment(List<WordAlignment> words, FrameTable frames,
+            boolean badTranscript) {
+        this.words = words;
+        this.frames = frames;
+        this.confusionTimeFrames = getConfusionTimeFrames(this.words);
+        this.badTranscript = badTranscript || frames.isEmpty();
+        this.lastFrame = frames.getLastTime();
+    }
+
+    public TranscriptAlignment(List<String> transcriptWords,
             List<WordResult> wordResults,
             List<SpeechClassifiedData> speechData,
             List<FloatData> features) {
-        this.words = getWordAlignments(transcript, wordResults);
-        this.frames = getFrameAlignments(this.words, speechData, features);
+        List<WordResult> alignedResults = new ArrayList<WordResult>();
+        this.words = getWordAlignments(transcriptWords, wordResults, alignedResults);
+        this.frames = getFrameAlignments(this.words, alignedResults, speechData, features);
         this.confusionTimeFrames = getConfusionTimeFrames(this.words);
 
         // Flag this transcript if no words could be aligned.
         this.badTranscript = (wordResults.size() == 0);
 
-        if (frames.keySet().size() != 0) {
-            this.lastFrame = Collections.max(frames.keySet());
+        if (!frames.isEmpty()) {
+            this.lastFrame = frames.getLastTime();
         } else {
             this.badTranscript = true;
             this.lastFrame = 0;
@@ -57,6 +75,13 @@ public class TranscriptAlignment {
      * @return list of segments
      */
     public List<Segment> getSegments() {
+        Metrics.Timer timer = Metrics.start(Metrics.SEGMENT);
+        List<Segment> segments = segment();
+        timer.stop();
+        return segments;
+    }
+
+    private List<Segment> segment() {
         List<Segment> segments = new ArrayList<Segment>();
         List<TimeFrame> empty = getEmptyRegions(150);
 
@@ -135,33 +160,30 @@ public class TranscriptAlignment {
      * a word in half.
      *
      * @param timeFrame non speech time frame
+     * @param confusion index of confusion time frames
+     * @param wordTimes index of word time frames
      * @return whether the time frame is valid.
      */
-    private boolean validateTimeFrame(TimeFrame timeFrame) {
+    private boolean validateTimeFrame(TimeFrame timeFrame,
+            IntervalIndex confusion, IntervalIndex wordTimes) {
         if (timeFrame.getStart() == 0 || timeFrame.getEnd() == this.lastFrame)
             return false;
 
-        // Check for overlapping confusion areas.
-        for (TimeFrame confusion : this.confusionTimeFrames) {
-            if (confusion.getStart() > timeFrame.getEnd() ||
-                    confusion.getEnd() < timeFrame.getStart())
-                continue;
-            else return false;
-        }
+        // Check for overlapping confusion areas and word regions.
+        return !confusion.overlaps(timeFrame) && !wordTimes.overlaps(timeFrame);
+    }
 
-        // Check word regions.
+    /**
+     * Builds an index over the time frames of the aligned words.
+     * @return interval index
+     */
+    private IntervalIndex getWordIndex() {
+        List<TimeFrame> times = new ArrayList<TimeFrame>(this.words.size());
         for (WordAlignment word : this.words) {
-            TimeFrame time = word.time;
-            if (time != null) {
-                if (time.getStart() > timeFrame.getEnd() ||
-                        time.getEnd() < timeFrame.getStart())
-                    continue;
-                else return false;
-            }
+            times.add(word.time);
         }
- 
-        return true;
-    } 
+        return new IntervalIndex(times);
+    }
 
     /**
      * Finds all regions of frames that do not have corresponding words and are
@@ -171,30 +193,32 @@ public class TranscriptAlignment {
      * @return list of TimeFrames
      */
     public List<TimeFrame> getEmptyRegions(long threshold) {
-        List<FrameAlignment> emptyFrames = new ArrayList<FrameAlignment>();
         List<TimeFrame> nonSpeech = new ArrayList<TimeFrame>();
+        IntervalIndex confusion = new IntervalIndex(this.confusionTimeFrames);
+        IntervalIndex wordTimes = getWordIndex();
 
-        for (FrameAlignment frame : frames.values()) {
-            if (frame.isEmpty()) emptyFrames.add(frame);
-        }
+        int row = frames.nextRow(0);
+        while (row >= 0 && !frames.isEmpty(row)) row = frames.nextRow(row + 1);
 
-        if (emptyFrames.size() == 0) {
+        if (row < 0) {
             return nonSpeech;
         }
 
-        long start = emptyFrames.get(0).time;
+        long start = frames.getTime(row);
         long end = start;
-        for (FrameAlignment frame : emptyFrames) {
-            if (frame.time == end + 10) {
-                end = frame.time;
-            } else if (frame.time > end + 10) {
+        for (; row >= 0; row = frames.nextRow(row + 1)) {
+            if (!frames.isEmpty(row)) continue;
+
+            long time = frames.getTime(row);
+            if (time == end + 10) {
+                end = time;
+            } else if (time > end + 10) {
                 if (end != start && end - start >= threshold) {
                     TimeFrame timeFrame = new TimeFrame(start, end);
-                    if (validateTimeFrame(timeFrame))
+                    if (validateTimeFrame(timeFrame, confusion, wordTimes))
                         nonSpeech.add(timeFrame);
-                    //System.out.printf("%f,%f,%d\n", start / 1000.0, end / 1000.0, end-start);
                 }
-                start = end = frame.time;
+                start = end = time;
             }
         }
 
@@ -203,27 +227,27 @@ public class TranscriptAlignment {
 
     /**
      * Creates a list of Word Alignments from a list of Word Result objects
-     * and the transcript they were aligned to.
+     * and the transcript words they were aligned to.
      * Creates WordAlignment objects without corresponding words for words
      * that were not found during the alignment process.
      *
-     * @param transcript transcript
+     * @param words expanded transcript words
      * @param wordResults word results from alignment process
+     * @param alignedResults filled with the word result of each word
+     *        alignment, or null where the word was not found
      * @return list of word alignments
      */
-    private List<WordAlignment> getWordAlignments(String transcript,
-            List<WordResult> wordResults) {
+    private List<WordAlignment> getWordAlignments(List<String> words,
+            List<WordResult> wordResults, List<WordResult> alignedResults) {
         List<WordAlignment> wordAlignments = new ArrayList<WordAlignment>();
-        SpeechAligner aligner = SpeechTools.getSpeechAligner();
 
         // Align transcript
         List<String> stringResults = new ArrayList<String>();
-        List<String> sentences = aligner.getTokenizer().expand(transcript);
-        List<String> words = aligner.sentenceToWords(sentences);
 
         if (wordResults.size() == 0) {
             for (String w : words) {
-                wordAlignments.add(new WordAlignment(w, null));
+                wordAlignments.add(new WordAlignment(w, (WordResult) null));
+                alignedResults.add(null);
             }
             return wordAlignments;
         }
@@ -239,11 +263,12 @@ public class TranscriptAlignment {
         int lastId = -1;
         for (int i = 0; i < aid.length; ++i) {
             if (aid[i] == -1) {
-                Word word = null;
-                wordAlignments.add(new WordAlignment(words.get(i), null));
+                wordAlignments.add(new WordAlignment(words.get(i), (WordResult) null));
+                alignedResults.add(null);
             } else {
                 WordResult wr = wordResults.get(aid[i]);
                 wordAlignments.add(new WordAlignment(wr.getWord().toString(), wr));
+                alignedResults.add(wr);
                 lastId = aid[i];
             }
         }
@@ -252,57 +277,46 @@ public class TranscriptAlignment {
     }
 
     /**
-     * Creates a map of collect times to FrameAlignment objects from a list of
-     * WordAlignment objects.
-     * Blank alignments are create for frames that do not have corresponding
-     * words, and frames are tagged as speech/non-speech according to the given
-     * speech data. Finally, each alignment is given its corresponding feature
-     * data.
+     * Creates a frame table from the tokens of the aligned words.
+     * Frames are tagged as speech/non-speech according to the given speech
+     * data, and only frames that were speech classified keep their word
+     * alignment.  Every frame that has features gets a row.
      * 
      * @param words word alignments
+     * @param alignedResults word result of each word alignment, or null
      * @param speechData speech classified data
      * @param features extracted features by frame
-     * @return map of times to frame alignments
+     * @return frame table
      */
-    private Map<Long, FrameAlignment> getFrameAlignments(List<WordAlignment> words,
+    private FrameTable getFrameAlignments(List<WordAlignment> words,
+            List<WordResult> alignedResults,
             List<SpeechClassifiedData> speechData,
             List<FloatData> features) {
-        // Populate frame alignments from words.
-        Map<Long, FrameAlignment> tempFrames = new LinkedHashMap<Long, FrameAlignment>();
+        FrameTable table = new FrameTable(words, features);
 
-        for (WordAlignment word : words) {
-            for (FrameAlignment frame : word.frames) {
-                tempFrames.put(frame.time, frame);
-                frame.isSpeech = true;
+        // Populate frame alignments from words.
+        TokenDecoder decoder = new TokenDecoder();
+        for (int i = 0; i < words.size(); ++i) {
+            WordResult wr = alignedResults.get(i);
+            if (wr == null) continue;
+
+            for (Token token : wr.getTokens()) {
+                decoder.decode(token);
+                table.setAlignment(decoder.getTime(), i,
+                        decoder.getUnitId(),
+                        decoder.getState(),
+                        decoder.getMixtureId(),
+                        decoder.getScore());
             }
         }
 
-        // Fill in the gaps and set speech status.
-        Map<Long, FrameAlignment> frames = new LinkedHashMap<Long, FrameAlignment>();
-        long time = 0;
-
+        // Set speech status.
         for (SpeechClassifiedData data : speechData) {
-            time = data.getCollectTime();
-            FrameAlignment f = tempFrames.get(time);
-            if (f == null)
-                f = new FrameAlignment(time);
-            f.isSpeech = data.isSpeech();
-            frames.put(time, f);
-        }
-
-        tempFrames = frames;
-        frames = new LinkedHashMap<Long, FrameAlignment>();
-
-        for (FloatData data : features) {
-            time = data.getCollectTime();
-            FrameAlignment f = tempFrames.get(time);
-            if (f == null)
-                f = new FrameAlignment(time);
-            f.features = data;
-            frames.put(time, f);
+            table.setSpeech(data.getCollectTime(), data.isSpeech());
         }
+        table.dropUnclassified();
 
-        return frames;
+        return table;
     }
 
     public List<TimeFrame> getConfusionTimeFrames(List<WordAlignment> wordAlignments) {
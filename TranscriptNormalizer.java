@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.cmu.sphinx.alignment.USEnglishTokenizer;
+import edu.cmu.sphinx.util.BatchFile;
+
+/**
+ * Expands transcripts into the words the aligner looks for, without
+ * loading any models.  Numbers, abbreviations and punctuation are expanded
+ * by a USEnglishTokenizer kept per thread, and the result is split and
+ * lower cased the way SpeechAligner.sentenceToWords does.
+ */
+public class TranscriptNormalizer {
+    private static final ThreadLocal<USEnglishTokenizer> tokenizer =
+        new ThreadLocal<USEnglishTokenizer>() {
+            @Override
+            protected USEnglishTokenizer initialValue() {
+                return new USEnglishTokenizer();
+            }
+        };
+
+    /**
+     * Splits a transcript into words.
+     * @param transcript transcript
+     * @return list of words
+     */
+    public static List<String> getWords(String transcript) {
+        List<String> words = new ArrayList<String>();
+        for (String token : tokenizer.get().expand(transcript)) {
+            for (String word : token.toLowerCase().split("\\s+")) {
+                if (!word.isEmpty()) words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Expands a transcript into space separated words.
+     * @param transcript transcript
+     * @return normalized transcript
+     */
+    public static String normalize(String transcript) {
+        StringBuilder sb = new StringBuilder();
+        for (String word : getWords(transcript)) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(word);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Collects the words of every transcript in a batch.  Transcripts are
+     * expanded on the batch workers.
+     * @param lines batch lines
+     * @return sorted vocabulary
+     */
+    public static Set<String> getVocabulary(List<String> lines) throws Exception {
+        final Set<String> vocabulary = new TreeSet<String>();
+        BatchExecutor.run(lines,
+            new BatchExecutor.Task<List<String>>() {
+                public List<String> process(String line) {
+                    return getWords(BatchFile.getReference(line));
+                }
+            },
+            new BatchExecutor.Sink<List<String>>() {
+                public void accept(String line, List<String> words) {
+                    vocabulary.addAll(words);
+                }
+            });
+        return vocabulary;
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of unit names shared by every frame table, so frames hold a small
+ * integer instead of a string for their triphone.
+ * Ids are handed out once per distinct name and never change, so tables
+ * built by different sessions and threads can be compared and joined.
+ */
+public class UnitTable {
+    private static final List<String> names = new ArrayList<String>();
+    private static final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    /**
+     * Gets the id of a unit name, assigning one if the name is new.
+     * @param name unit name, as printed by Unit.toString()
+     * @return unit id
+     */
+    public static synchronized int getId(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the name of a unit id.
+     * @param id unit id, or -1
+     * @return unit name, or null for -1
+     */
+    public static synchronized String getName(int id) {
+        return (id < 0) ? null : names.get(id);
+    }
+
+    public static synchronized int size() {
+        return names.size();
+    }
+}
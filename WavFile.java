@@ -0,0 +1,249 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+/**
+ * RIFF WAV file with its PCM payload mapped into memory.
+ * The header is parsed chunk by chunk, so files with extra chunks before
+ * the data (LIST, fact, bext...) or a longer fmt chunk are read from the
+ * right offset.  Only 16-bit PCM is accepted.  Streams opened on the file
+ * serve the raw samples only, which is what StreamDataSource expects.
+ */
+public class WavFile {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_EXTENSIBLE = 0xfffe;
+
+    public final int format;
+    public final int channels;
+    public final int sampleRate;
+    public final int byteRate;
+    public final int blockAlign;
+    public final int bitsPerSample;
+
+    // PCM payload, position 0 to limit.
+    private final ByteBuffer data;
+
+    /**
+     * Maps a WAV file into memory.
+     * @param file wav file
+     * @return parsed file
+     */
+    public static WavFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() > Integer.MAX_VALUE)
+                throw new IOException("WAV file too large to map: " + file);
+            return new WavFile(raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        0, raf.length()), file.getPath());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a WAV file from a URL.  Local files are mapped; anything else
+     * is read into memory.
+     * @param url location of wav file
+     * @return parsed file
+     */
+    public static WavFile read(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return open(new File(url.toURI()));
+            } catch (URISyntaxException e) {
+                // Fall through and read it as a stream.
+            }
+        }
+        return new WavFile(ByteBuffer.wrap(readFully(url)), url.toString());
+    }
+
+    private WavFile(ByteBuffer buffer, String name) throws IOException {
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (b.limit() < 12 || !getId(b, 0).equals("RIFF") || !getId(b, 8).equals("WAVE"))
+            throw new IOException("Not a WAV file: " + name);
+
+        int[] fmt = null;
+        int dataStart = -1;
+        int dataEnd = -1;
+        long pos = 12;
+        while (pos + 8 <= b.limit()) {
+            String id = getId(b, (int) pos);
+            long size = b.getInt((int) pos + 4) & 0xffffffffL;
+            int body = (int) pos + 8;
+
+            if (id.equals("fmt ")) {
+                if (size < 16 || body + 16 > b.limit())
+                    throw new IOException("Bad fmt chunk: " + name);
+                fmt = new int[] {
+                    b.getShort(body) & 0xffff,
+                    b.getShort(body + 2) & 0xffff,
+                    b.getInt(body + 4),
+                    b.getInt(body + 8),
+                    b.getShort(body + 12) & 0xffff,
+                    b.getShort(body + 14) & 0xffff
+                };
+                // WAVE_FORMAT_EXTENSIBLE keeps the real format at the start
+                // of its subformat GUID.
+                if (fmt[0] == FORMAT_EXTENSIBLE && size >= 40 && body + 26 <= b.limit())
+                    fmt[0] = b.getShort(body + 24) & 0xffff;
+            } else if (id.equals("data")) {
+                // Files still being written, or truncated, claim more data
+                // than they hold.
+                dataStart = body;
+                dataEnd = (int) Math.min(body + size, b.limit());
+                break;
+            }
+            // Chunks are padded to an even length.
+            pos = body + size + (size & 1);
+        }
+        if (fmt == null) throw new IOException("No fmt chunk: " + name);
+        if (dataStart < 0) throw new IOException("No data chunk: " + name);
+        // The front end reads 16-bit linear PCM only.
+        if (fmt[0] != FORMAT_PCM || fmt[5] != 16)
+            throw new IOException("Not 16-bit PCM (format " + fmt[0] + ", "
+                    + fmt[5] + " bits): " + name);
+
+        this.format = fmt[0];
+        this.channels = fmt[1];
+        this.sampleRate = fmt[2];
+        this.byteRate = fmt[3];
+        this.blockAlign = Math.max(1, fmt[4]);
+        this.bitsPerSample = fmt[5];
+
+        b.limit(dataEnd).position(dataStart);
+        this.data = b.slice();
+    }
+
+    private WavFile(WavFile parent, ByteBuffer data) {
+        this.format = parent.format;
+        this.channels = parent.channels;
+        this.sampleRate = parent.sampleRate;
+        this.byteRate = parent.byteRate;
+        this.blockAlign = parent.blockAlign;
+        this.bitsPerSample = parent.bitsPerSample;
+        this.data = data;
+    }
+
+    /**
+     * Gets a view of part of the payload.  No samples are copied.
+     * @param from first byte of the payload
+     * @param to end byte of the payload, exclusive
+     * @return file sharing this file's memory
+     */
+    public WavFile slice(int from, int to) {
+        ByteBuffer b = data.duplicate();
+        b.limit(to).position(from);
+        return new WavFile(this, b.slice());
+    }
+
+    /**
+     * Gets the PCM payload.
+     * @return read-only buffer over the samples
+     */
+    public ByteBuffer getData() {
+        return data.asReadOnlyBuffer();
+    }
+
+    public int getDataSize() {
+        return data.limit();
+    }
+
+    /**
+     * Gets the length of the audio.
+     * @return duration in milliseconds
+     */
+    public long getDuration() {
+        if (byteRate <= 0) return 0;
+        return (long) data.limit() * 1000 / byteRate;
+    }
+
+    /**
+     * Opens a new stream over the PCM payload.
+     * @return input stream of raw samples
+     */
+    public InputStream openStream() {
+        return new BufferInputStream(data.duplicate());
+    }
+
+    /**
+     * Adds the format and the samples to a digest.  Header chunks that do
+     * not affect the samples are left out.
+     * @param digest message digest
+     */
+    public void digest(MessageDigest digest) {
+        ByteBuffer header = ByteBuffer.allocate(20);
+        header.putInt(format).putInt(channels).putInt(sampleRate)
+            .putInt(blockAlign).putInt(bitsPerSample);
+        header.flip();
+        digest.update(header);
+        digest.update(data.duplicate());
+    }
+
+    private static String getId(ByteBuffer b, int offset) {
+        byte[] id = new byte[4];
+        for (int i = 0; i < 4; ++i) id[i] = b.get(offset + i);
+        return new String(id, ASCII);
+    }
+
+    private static byte[] readFully(URL source) throws IOException {
+        InputStream is = source.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Input stream reading straight from a byte buffer.
+     */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -23,11 +23,9 @@ import edu.cmu.sphinx.util.TimeFrame;
 public class WordAlignment {
     public final String word;
     public TimeFrame time;
-    public final List<FrameAlignment> frames;
 
     public WordAlignment(String word, WordResult wr) {
         this.word = word;
-        this.frames = new ArrayList<FrameAlignment>();
 
         if (wr != null) {
             if (wr.getTokens().size() == 0) {
@@ -36,17 +34,17 @@ public class WordAlignment {
                 long start = wr.getTokens().get(0).getCollectTime();
                 long end = wr.getTokens().get(wr.getTokens().size()-1).getCollectTime();
                 this.time = new TimeFrame(start, end);
-
-                for (Token token : wr.getTokens()) {
-                    //this.frames.add(new FrameAlignment(token, wr.getWord().toString()));
-                    this.frames.add(new FrameAlignment(token, this));
-                }
             }
         } else {
             this.time = null;
         }
     }
 
+    public WordAlignment(String word, TimeFrame time) {
+        this.word = word;
+        this.time = time;
+    }
+
     public String toString() {
         String start = (time == null) ? "" : Long.toString(time.getStart());
         String end = (time == null) ? "" : Long.toString(time.getEnd());
@@ -0,0 +1,48 @@
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import edu.cmu.sphinx.result.WordResult;
+
+/**
+ * Frame map construction and segmentation of a real alignment of the
+ * benchmark audio and transcript.  The alignment search runs once in
+ * setup and is not timed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AlignmentBenchmark {
+    private List<String> transcriptWords;
+    private List<WordResult> wordResults;
+    private FrontEndData frontEndData;
+    private TranscriptAlignment alignment;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkData.init();
+        AudioBuffer audio = BenchmarkData.loadAudio();
+        String transcript = BenchmarkData.loadTranscript();
+
+        AlignmentSession session = SpeechTools.getSession();
+        transcriptWords = session.getTranscriptWords(transcript);
+        wordResults = session.getWordAlignment(audio, transcript);
+        frontEndData = session.getFrontEndData(audio);
+        alignment = createAlignment();
+    }
+
+    @Benchmark
+    public TranscriptAlignment createAlignment() {
+        return new TranscriptAlignment(transcriptWords, wordResults,
+                frontEndData.speechData, frontEndData.features);
+    }
+
+    @Benchmark
+    public List<Segment> getSegments() {
+        return alignment.getSegments();
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import edu.cmu.sphinx.api.*;
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.util.TimeFrame;
+
+/**
+ * Inputs shared by the benchmarks.  Real audio is read from the file named
+ * by the bench.audio system property (test.wav by default), with its
+ * transcript in bench.transcript (test.transcript by default).
+ */
+public class BenchmarkData {
+    public static final String CONFIG = "/audio/tools/transcription/jar/config.xml";
+    public static final String PROP_AUDIO = "bench.audio";
+    public static final String PROP_TRANSCRIPT = "bench.transcript";
+
+    public static final int DIMENSION = 39;
+
+    // Synthetic transcripts: phrases of words separated by silences.
+    private static final long WORD_LENGTH = 300;
+    private static final long GAP_LENGTH = 200;
+    private static final int WORDS_PER_PHRASE = 10;
+
+    public static void init() {
+        Context.setCustomConfig(CONFIG);
+    }
+
+    public static AudioBuffer loadAudio() throws Exception {
+        URL url = new File(System.getProperty(PROP_AUDIO, "test.wav")).toURI().toURL();
+        return new AudioBuffer(url);
+    }
+
+    /**
+     * Loads the first seconds of the benchmark audio.  Files shorter than
+     * the requested length are used whole.
+     * @param seconds audio length
+     * @return buffered audio
+     */
+    public static AudioBuffer loadAudio(int seconds) throws Exception {
+        AudioBuffer audio = loadAudio();
+        long length = seconds * 1000L;
+        if (length >= audio.getDuration()) {
+            System.err.println("WARNING: benchmark audio is shorter than " + seconds + "s");
+            return audio;
+        }
+        return audio.slice(0, length);
+    }
+
+    public static String loadTranscript() throws Exception {
+        Scanner scanner = new Scanner(new File(System.getProperty(PROP_TRANSCRIPT, "test.transcript")));
+        scanner.useDelimiter("\\Z");
+        String transcript = scanner.next();
+        scanner.close();
+        return transcript;
+    }
+
+    /**
+     * Creates a table of random features where every frame is aligned.
+     * @param numFrames number of frames
+     * @return frame table
+     */
+    public static FrameTable createFrameTable(int numFrames) {
+        List<WordAlignment> words = new ArrayList<WordAlignment>();
+        words.add(new WordAlignment("word", new TimeFrame(0, numFrames * FrameTable.FRAME_SHIFT)));
+
+        List<FloatData> features = new ArrayList<FloatData>(numFrames);
+        java.util.Random random = new java.util.Random(0);
+        for (int i = 0; i < numFrames; ++i) {
+            float[] values = new float[DIMENSION];
+            for (int j = 0; j < DIMENSION; ++j) values[j] = random.nextFloat();
+            features.add(new FloatData(values, 16000, i * 160L));
+        }
+
+        FrameTable frames = new FrameTable(words, features);
+        int triphone = UnitTable.getId("AH");
+        for (int i = 0; i < numFrames; ++i) {
+            long time = i * FrameTable.FRAME_SHIFT;
+            frames.setAlignment(time, 0, triphone, i % 3, i % 4000, -random.nextFloat());
+            frames.setSpeech(time, true);
+        }
+        return frames;
+    }
+
+    /**
+     * Creates an alignment of phrases of words separated by silences.
+     * @param numWords number of words
+     * @return transcript alignment
+     */
+    public static TranscriptAlignment createAlignment(int numWords) {
+        List<WordAlignment> words = new ArrayList<WordAlignment>();
+        List<TimeFrame> silences = new ArrayList<TimeFrame>();
+
+        long time = GAP_LENGTH;
+        for (int i = 0; i < numWords; ++i) {
+            words.add(new WordAlignment("word" + i,
+                        new TimeFrame(time, time + WORD_LENGTH - 10)));
+            time += WORD_LENGTH;
+            if ((i + 1) % WORDS_PER_PHRASE == 0) {
+                silences.add(new TimeFrame(time, time + GAP_LENGTH - 10));
+                time += GAP_LENGTH;
+            }
+        }
+        long end = time + GAP_LENGTH;
+
+        List<FloatData> features = new ArrayList<FloatData>();
+        for (long t = 0; t < end; t += FrameTable.FRAME_SHIFT) {
+            features.add(new FloatData(new float[1], 16000, t * 16));
+        }
+
+        FrameTable frames = new FrameTable(words, features);
+        int silence = 0;
+        for (long t = 0; t < end; t += FrameTable.FRAME_SHIFT) {
+            while (silence < silences.size() && silences.get(silence).getEnd() < t)
+                ++silence;
+            boolean inSilence = t < GAP_LENGTH || t >= time
+                || (silence < silences.size()
+                    && silences.get(silence).getStart() <= t);
+            frames.setSpeech(t, !inSilence);
+        }
+
+        return new TranscriptAlignment(words, frames, false);
+    }
+
+    /**
+     * Splits a synthetic alignment into one segment per phrase, before any
+     * merging.
+     * @param t alignment made by createAlignment()
+     * @return segments
+     */
+    public static List<Segment> getPhraseSegments(TranscriptAlignment t) {
+        List<Segment> segments = new ArrayList<Segment>();
+        Segment curr = null;
+        for (WordAlignment word : t.words) {
+            if (curr == null || word.time.getStart() - curr.getEnd() > FrameTable.FRAME_SHIFT) {
+                curr = new Segment(null, new TimeFrame(word.time.getStart(), word.time.getEnd()), null);
+                segments.add(curr);
+            }
+            curr.time = new TimeFrame(curr.getStart(), word.time.getEnd());
+            curr.words.add(word);
+        }
+        return segments;
+    }
+}
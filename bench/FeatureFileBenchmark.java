@@ -0,0 +1,50 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Writing and reading labelled feature files, as done by FeatureDumper
+ * and FeatureReader.  Files go to the temporary directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FeatureFileBenchmark {
+    @Param({"1000", "30000", "360000"})
+    public int frames;
+
+    private FrameTable table;
+    private File input;
+    private File output;
+
+    @Setup
+    public void setUp() throws IOException {
+        table = BenchmarkData.createFrameTable(frames);
+        input = File.createTempFile("bench-", ".feat");
+        output = File.createTempFile("bench-", ".feat");
+        FeatureDumper.writeFeatures(table, input);
+    }
+
+    @TearDown
+    public void tearDown() {
+        input.delete();
+        output.delete();
+    }
+
+    @Benchmark
+    public File writeFeatures() throws IOException {
+        FeatureDumper.writeFeatures(table, output);
+        return output;
+    }
+
+    @Benchmark
+    public List<FeatureReader.LabelledFeature> loadFeatures() throws IOException {
+        return FeatureReader.loadFeatures(input.getPath());
+    }
+}
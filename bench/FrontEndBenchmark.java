@@ -0,0 +1,59 @@
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.SpeechClassifiedData;
+
+/**
+ * Front end and senone scoring on the first seconds of the benchmark
+ * audio.  Audio is buffered in memory, so disk reads are not timed.
+ * Leave feature.store unset, or features come from the store.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FrontEndBenchmark {
+    @Param({"10", "60", "300"})
+    public int seconds;
+
+    private AudioBuffer audio;
+    private List<FloatData> features;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkData.init();
+        audio = BenchmarkData.loadAudio(seconds);
+        features = SpeechTools.getFeatures(audio);
+    }
+
+    @Benchmark
+    public List<FloatData> getFeatures() throws Exception {
+        return SpeechTools.getFeatures(audio);
+    }
+
+    @Benchmark
+    public List<SpeechClassifiedData> getSpeechClassifiedData() throws Exception {
+        return SpeechTools.getSpeechClassifiedData(audio);
+    }
+
+    @Benchmark
+    public FrontEndData getFrontEndData() throws Exception {
+        return SpeechTools.getFrontEndData(audio);
+    }
+
+    @Benchmark
+    public SenoneDump scoreSenones() throws Exception {
+        SenoneDump dmp = new SenoneDump(SpeechTools.getContext().getLoader(), 1);
+        try {
+            for (FloatData data : features) dmp.addFrame(data);
+        } finally {
+            dmp.shutdown();
+        }
+        return dmp;
+    }
+}
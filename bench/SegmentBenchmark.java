@@ -0,0 +1,49 @@
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Segmentation of synthetic transcripts of increasing length.  The time
+ * per word should stay roughly flat as the transcript grows, for both the
+ * batch and the streaming segmenter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SegmentBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int words;
+
+    private TranscriptAlignment alignment;
+    private List<Segment> phrases;
+
+    @Setup
+    public void setUp() {
+        alignment = BenchmarkData.createAlignment(words);
+        phrases = BenchmarkData.getPhraseSegments(alignment);
+    }
+
+    @Benchmark
+    public TranscriptAlignment createAlignment() {
+        return new TranscriptAlignment(alignment.words, alignment.frames, false);
+    }
+
+    @Benchmark
+    public List<Segment> getSegments() {
+        return alignment.getSegments();
+    }
+
+    @Benchmark
+    public List<Segment> getStreamingSegments() {
+        return StreamingSegmenter.getSegments(alignment);
+    }
+
+    @Benchmark
+    public List<Segment> merge() {
+        return Segment.merge(phrases, 5000);
+    }
+}